@@ -0,0 +1,55 @@
+package com.lifecircle.community.benchmark;
+
+import com.lifecircle.community.util.CommunityUtil;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CommunityUtil的基准测试，这几个方法几乎在每个请求中都会调用
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CommunityUtilBenchmark {
+
+    private Map<String, Object> map;
+
+    private String password;
+
+    @Setup
+    public void setup() {
+        // 和异步请求返回的数据差不多大小
+        map = new HashMap<>();
+        map.put("likeCount", 128L);
+        map.put("likeStatus", 1);
+        map.put("nextCursor", 10086);
+        password = "123456" + CommunityUtil.generateUUID().substring(0, 5);
+    }
+
+    @Benchmark
+    public String getJSONString() {
+        return CommunityUtil.getJSONString(0, null, map);
+    }
+
+    @Benchmark
+    public String getJSONStringWithoutMap() {
+        return CommunityUtil.getJSONString(1, "您还没有登录哦！");
+    }
+
+    @Benchmark
+    public String md5() {
+        return CommunityUtil.md5(password);
+    }
+
+    @Benchmark
+    public String generateUUID() {
+        return CommunityUtil.generateUUID();
+    }
+
+}
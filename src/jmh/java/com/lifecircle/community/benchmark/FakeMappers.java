@@ -0,0 +1,93 @@
+package com.lifecircle.community.benchmark;
+
+import com.lifecircle.community.dao.CommentMapper;
+import com.lifecircle.community.dao.LikeCountMapper;
+import com.lifecircle.community.dao.UserMapper;
+import com.lifecircle.community.entity.Comment;
+import com.lifecircle.community.entity.User;
+
+import java.lang.reflect.Proxy;
+import java.util.*;
+
+/**
+ * 基准测试用的内存版Mapper，只实现了页面组装用到的查询
+ */
+public class FakeMappers {
+
+    public static UserMapper userMapper(Map<Integer, User> users) {
+        return (UserMapper) Proxy.newProxyInstance(UserMapper.class.getClassLoader(), new Class<?>[]{UserMapper.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "selectById":
+                            return users.get(args[0]);
+                        case "selectByIds":
+                            List<User> list = new ArrayList<>();
+                            for (Object id : (List<?>) args[0]) {
+                                if (users.containsKey(id)) {
+                                    list.add(users.get(id));
+                                }
+                            }
+                            return list;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    // 数据库中没有点赞数量的副本，计数由Redis中的点赞集合初始化
+    public static LikeCountMapper likeCountMapper() {
+        return (LikeCountMapper) Proxy.newProxyInstance(LikeCountMapper.class.getClassLoader(), new Class<?>[]{LikeCountMapper.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "selectLikeCount":
+                            return null;
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    // comments中包含所有的评论和回复
+    public static CommentMapper commentMapper(List<Comment> comments) {
+        return (CommentMapper) Proxy.newProxyInstance(CommentMapper.class.getClassLoader(), new Class<?>[]{CommentMapper.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "selectCommentsByEntityIds": {
+                            int entityType = (Integer) args[0];
+                            List<?> entityIds = (List<?>) args[1];
+                            int limit = (Integer) args[2];
+                            Map<Integer, Integer> taken = new HashMap<>();
+                            List<Comment> list = new ArrayList<>();
+                            for (Comment comment : comments) {
+                                if (comment.getEntityType() == entityType && entityIds.contains(comment.getEntityId())
+                                        && taken.merge(comment.getEntityId(), 1, Integer::sum) <= limit) {
+                                    list.add(comment);
+                                }
+                            }
+                            return list;
+                        }
+                        case "selectCountByEntityIds": {
+                            int entityType = (Integer) args[0];
+                            List<?> entityIds = (List<?>) args[1];
+                            Map<Integer, Integer> counts = new HashMap<>();
+                            for (Comment comment : comments) {
+                                if (comment.getEntityType() == entityType && entityIds.contains(comment.getEntityId())) {
+                                    counts.merge(comment.getEntityId(), 1, Integer::sum);
+                                }
+                            }
+                            List<Map<String, Object>> rows = new ArrayList<>();
+                            for (Map.Entry<Integer, Integer> entry : counts.entrySet()) {
+                                Map<String, Object> row = new HashMap<>();
+                                row.put("entityId", entry.getKey());
+                                row.put("count", entry.getValue());
+                                rows.add(row);
+                            }
+                            return rows;
+                        }
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+}
@@ -0,0 +1,117 @@
+package com.lifecircle.community.benchmark;
+
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.SetOperations;
+import org.springframework.data.redis.core.ValueOperations;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 基准测试用的内存版RedisTemplate，只实现了页面组装用到的命令
+ * 管道中的命令返回null，结果在executePipelined结束时按顺序返回，和真实的管道一致
+ */
+public class FakeRedisTemplate extends RedisTemplate<Object, Object> {
+
+    private final Map<Object, Object> values = new ConcurrentHashMap<>();
+
+    private final Map<Object, Set<Object>> sets = new ConcurrentHashMap<>();
+
+    // 当前线程正在执行的管道，null表示不在管道中
+    private final ThreadLocal<List<Object>> pipeline = new ThreadLocal<>();
+
+    private final ValueOperations<Object, Object> valueOperations = proxy(ValueOperations.class);
+
+    private final SetOperations<Object, Object> setOperations = proxy(SetOperations.class);
+
+    @Override
+    public ValueOperations<Object, Object> opsForValue() {
+        return valueOperations;
+    }
+
+    @Override
+    public SetOperations<Object, Object> opsForSet() {
+        return setOperations;
+    }
+
+    @Override
+    public <T> T execute(SessionCallback<T> session) {
+        return session.execute(this);
+    }
+
+    @Override
+    public List<Object> executePipelined(SessionCallback<?> session) {
+        List<Object> results = new ArrayList<>();
+        pipeline.set(results);
+        try {
+            session.execute(this);
+        } finally {
+            pipeline.remove();
+        }
+        return results;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T proxy(Class<T> type) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type},
+                (proxy, method, args) -> invoke(method, args));
+    }
+
+    private Object invoke(Method method, Object[] args) throws Exception {
+        if (method.getDeclaringClass() == Object.class) {
+            return method.invoke(this, args);
+        }
+
+        Object result;
+        switch (method.getName()) {
+            case "get":
+                result = values.get(args[0]);
+                break;
+            case "multiGet":
+                List<Object> list = new ArrayList<>();
+                for (Object key : (Collection<?>) args[0]) {
+                    list.add(values.get(key));
+                }
+                result = list;
+                break;
+            case "set":
+                values.put(args[0], args[1]);
+                result = null;
+                break;
+            case "setIfAbsent":
+                result = values.putIfAbsent(args[0], args[1]) == null;
+                break;
+            case "size":
+                Set<Object> set = sets.get(args[0]);
+                result = set == null ? 0L : (long) set.size();
+                break;
+            case "isMember":
+                set = sets.get(args[0]);
+                result = set != null && set.contains(args[1]);
+                break;
+            case "add":
+                set = sets.computeIfAbsent(args[0], k -> ConcurrentHashMap.newKeySet());
+                long added = 0;
+                for (Object member : (Object[]) args[1]) {
+                    if (set.add(member)) {
+                        added++;
+                    }
+                }
+                result = added;
+                break;
+            default:
+                throw new UnsupportedOperationException(method.getName());
+        }
+
+        List<Object> results = pipeline.get();
+        if (results != null) {
+            results.add(result);
+            return null;
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,159 @@
+package com.lifecircle.community.benchmark;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.lifecircle.community.entity.Comment;
+import com.lifecircle.community.entity.CommentVo;
+import com.lifecircle.community.entity.DiscussPost;
+import com.lifecircle.community.entity.User;
+import com.lifecircle.community.service.*;
+import com.lifecircle.community.util.CommunityConstant;
+import com.lifecircle.community.util.RedisKeyUtil;
+import com.lifecircle.community.util.RequestCacheHolder;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 首页和帖子详情页的视图组装基准测试
+ * Mapper和RedisTemplate都是内存版的，测出来的是组装本身的开销(批量查询的拼装、缓存查找、对象创建)，不包含网络往返
+ * 本地缓存的容量设为0，每次都会走批量查询Redis的路径
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class PageAssemblyBenchmark implements CommunityConstant {
+
+    // 每页的帖子或评论数量
+    @Param({"10", "50"})
+    private int pageSize;
+
+    // 开始时一半的用户在Redis中有缓存，其余的在第一次查询数据库之后写入缓存
+    private static final int USER_COUNT = 200;
+
+    private DiscussPostAssembler discussPostAssembler;
+
+    private CommentTreeLoader commentTreeLoader;
+
+    private List<DiscussPost> posts;
+
+    private List<Comment> comments;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        FakeRedisTemplate redisTemplate = new FakeRedisTemplate();
+        RequestCacheHolder requestCacheHolder = new RequestCacheHolder();
+
+        Map<Integer, User> users = new HashMap<>();
+        for (int i = 1; i <= USER_COUNT; i++) {
+            User user = new User();
+            user.setId(i);
+            user.setUsername("user" + i);
+            user.setHeaderUrl("http://images.nowcoder.com/head/" + i + "t.png");
+            user.setCreateTime(new Date());
+            users.put(i, user);
+            if (i % 2 == 0) {
+                redisTemplate.opsForValue().set(RedisKeyUtil.getUserKey(i), user);
+            }
+        }
+
+        UserService userService = new UserService();
+        ReflectionTestUtils.setField(userService, "userMapper", FakeMappers.userMapper(users));
+        ReflectionTestUtils.setField(userService, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(userService, "requestCacheHolder", requestCacheHolder);
+        ReflectionTestUtils.setField(userService, "localCache",
+                Caffeine.newBuilder().maximumSize(0).executor(Runnable::run).build());
+
+        SetLikeStorage likeStorage = new SetLikeStorage();
+        ReflectionTestUtils.setField(likeStorage, "redisTemplate", redisTemplate);
+
+        LikeCountService likeCountService = new LikeCountService();
+        ReflectionTestUtils.setField(likeCountService, "likeCountMapper", FakeMappers.likeCountMapper());
+        ReflectionTestUtils.setField(likeCountService, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(likeCountService, "likeStorage", likeStorage);
+
+        LikeService likeService = new LikeService();
+        ReflectionTestUtils.setField(likeService, "likeStorage", likeStorage);
+        ReflectionTestUtils.setField(likeService, "requestCacheHolder", requestCacheHolder);
+        ReflectionTestUtils.setField(likeService, "likeCountService", likeCountService);
+
+        discussPostAssembler = new DiscussPostAssembler();
+        ReflectionTestUtils.setField(discussPostAssembler, "userService", userService);
+        ReflectionTestUtils.setField(discussPostAssembler, "likeService", likeService);
+
+        // 首页：一页帖子，每个帖子有若干个赞
+        posts = new ArrayList<>();
+        for (int i = 1; i <= pageSize; i++) {
+            DiscussPost post = new DiscussPost();
+            post.setId(i);
+            post.setUserId(1 + random.nextInt(USER_COUNT));
+            post.setTitle("标题" + i);
+            post.setContent("内容" + i);
+            post.setCreateTime(new Date());
+            posts.add(post);
+            like(redisTemplate, random, ENTITY_TYPE_POST, i);
+        }
+
+        // 详情页：一页评论，每条评论有0到10条回复
+        comments = new ArrayList<>();
+        List<Comment> all = new ArrayList<>();
+        int commentId = 1;
+        for (int i = 0; i < pageSize; i++) {
+            Comment comment = comment(commentId++, random, ENTITY_TYPE_POST, 1, 0);
+            comments.add(comment);
+            all.add(comment);
+            like(redisTemplate, random, ENTITY_TYPE_COMMENT, comment.getId());
+            int replies = random.nextInt(11);
+            for (int j = 0; j < replies; j++) {
+                Comment reply = comment(commentId++, random, ENTITY_TYPE_COMMENT, comment.getId(),
+                        random.nextBoolean() ? 0 : 1 + random.nextInt(USER_COUNT));
+                all.add(reply);
+                like(redisTemplate, random, ENTITY_TYPE_COMMENT, reply.getId());
+            }
+        }
+
+        CommentService commentService = new CommentService();
+        ReflectionTestUtils.setField(commentService, "commentMapper", FakeMappers.commentMapper(all));
+
+        commentTreeLoader = new CommentTreeLoader();
+        ReflectionTestUtils.setField(commentTreeLoader, "commentService", commentService);
+        ReflectionTestUtils.setField(commentTreeLoader, "userService", userService);
+        ReflectionTestUtils.setField(commentTreeLoader, "likeService", likeService);
+        ReflectionTestUtils.setField(commentTreeLoader, "replyLimit", 5);
+    }
+
+    private static Comment comment(int id, Random random, int entityType, int entityId, int targetId) {
+        Comment comment = new Comment();
+        comment.setId(id);
+        comment.setUserId(1 + random.nextInt(USER_COUNT));
+        comment.setEntityType(entityType);
+        comment.setEntityId(entityId);
+        comment.setTargetId(targetId);
+        comment.setContent("评论" + id);
+        comment.setCreateTime(new Date());
+        return comment;
+    }
+
+    private static void like(FakeRedisTemplate redisTemplate, Random random, int entityType, int entityId) {
+        int likes = random.nextInt(20);
+        for (int i = 0; i < likes; i++) {
+            redisTemplate.opsForSet().add(RedisKeyUtil.getEntityLikeKey(entityType, entityId), 1 + random.nextInt(USER_COUNT));
+        }
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> assembleIndexPage() {
+        return discussPostAssembler.assemble(posts);
+    }
+
+    @Benchmark
+    public List<CommentVo> assembleDiscussDetail() {
+        return commentTreeLoader.load(comments, 1);
+    }
+
+}
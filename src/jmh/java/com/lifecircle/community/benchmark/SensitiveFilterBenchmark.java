@@ -0,0 +1,81 @@
+package com.lifecircle.community.benchmark;
+
+import com.lifecircle.community.util.SensitiveAutomaton;
+import com.lifecircle.community.util.SensitiveFilter;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.core.io.DefaultResourceLoader;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 敏感词过滤的基准测试，覆盖不同的文本长度和词典大小
+ * 敏感词和文本都是在500个常用汉字中随机生成的，文本中夹杂少量符号
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SensitiveFilterBenchmark {
+
+    @Param({"100", "10000", "1000000"})
+    private int textLength;
+
+    @Param({"100", "10000"})
+    private int dictionarySize;
+
+    private SensitiveFilter sensitiveFilter;
+
+    private String text;
+
+    @Setup
+    public void setup() throws Exception {
+        Random random = new Random(42);
+
+        List<String> words = new ArrayList<>(dictionarySize);
+        for (int i = 0; i < dictionarySize; i++) {
+            StringBuilder sb = new StringBuilder();
+            int length = 2 + random.nextInt(3);
+            for (int j = 0; j < length; j++) {
+                sb.append(randomChar(random));
+            }
+            words.add(sb.toString());
+        }
+        File file = File.createTempFile("sensitive-words", ".txt");
+        file.deleteOnExit();
+        Files.write(file.toPath(), words, StandardCharsets.UTF_8);
+
+        sensitiveFilter = new SensitiveFilter();
+        ReflectionTestUtils.setField(sensitiveFilter, "source", "file");
+        ReflectionTestUtils.setField(sensitiveFilter, "location", "file:" + file.getAbsolutePath());
+        ReflectionTestUtils.setField(sensitiveFilter, "resourceLoader", new DefaultResourceLoader());
+        sensitiveFilter.init();
+
+        StringBuilder sb = new StringBuilder(textLength);
+        for (int i = 0; i < textLength; i++) {
+            sb.append(random.nextInt(20) == 0 ? '☆' : randomChar(random));
+        }
+        text = sb.toString();
+    }
+
+    private static char randomChar(Random random) {
+        return (char) (0x4E00 + random.nextInt(500));
+    }
+
+    @Benchmark
+    public String filter() {
+        return sensitiveFilter.filter(text);
+    }
+
+    @Benchmark
+    public List<List<SensitiveAutomaton.Match>> scan() {
+        return sensitiveFilter.scan(Collections.singletonList(text));
+    }
+
+}
@@ -1,9 +1,11 @@
 package com.lifecircle.community.config;
 
+import com.lifecircle.community.util.CompactRedisSerializer;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.connection.RedisConnectionFactory;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
 import org.springframework.data.redis.serializer.RedisSerializer;
 
 /**
@@ -21,17 +23,26 @@ public class RedisConfig {
         // 设置key的序列化方式
         template.setKeySerializer(RedisSerializer.string());
 
-        // 设置value的序列化方式
-        template.setValueSerializer(RedisSerializer.json());
+        // 设置value的序列化方式：整数写成数字，User和LoginTicket写成二进制，其他类型写成JSON
+        CompactRedisSerializer valueSerializer = new CompactRedisSerializer();
+        template.setValueSerializer(valueSerializer);
 
         // 设置hash的key的序列化方式
         template.setHashKeySerializer(RedisSerializer.string());
 
         // 设置hash的value的序列化方式
-        template.setHashValueSerializer(RedisSerializer.json());
+        template.setHashValueSerializer(valueSerializer);
 
         template.afterPropertiesSet();
         return template;
     }
 
+    // 订阅Redis频道的监听容器，用于在各个节点之间广播消息(比如清除本地缓存)
+    @Bean
+    public RedisMessageListenerContainer redisMessageListenerContainer(RedisConnectionFactory factory){
+        RedisMessageListenerContainer container = new RedisMessageListenerContainer();
+        container.setConnectionFactory(factory);
+        return container;
+    }
+
 }
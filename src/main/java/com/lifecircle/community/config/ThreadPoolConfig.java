@@ -0,0 +1,59 @@
+package com.lifecircle.community.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.annotation.EnableScheduling;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * 启用Spring的定时任务和异步任务，并配置它们的线程池
+ */
+@Configuration
+@EnableScheduling
+@EnableAsync
+public class ThreadPoolConfig {
+
+    // 定时任务的线程数量，默认只有一个线程，所有的定时任务会排队执行
+    @Value("${community.task.scheduling.pool-size:8}")
+    private int schedulingPoolSize;
+
+    @Value("${community.task.execution.core-size:4}")
+    private int executionCoreSize;
+
+    @Value("${community.task.execution.max-size:16}")
+    private int executionMaxSize;
+
+    // 异步任务的队列容量，队列满且线程数达到上限时由调用者执行
+    @Value("${community.task.execution.queue-capacity:1000}")
+    private int executionQueueCapacity;
+
+    @Bean
+    public ThreadPoolTaskScheduler taskScheduler(){
+        ThreadPoolTaskScheduler scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(schedulingPoolSize);
+        scheduler.setThreadNamePrefix("scheduling-");
+        scheduler.setWaitForTasksToCompleteOnShutdown(true);
+        scheduler.setAwaitTerminationSeconds(30);
+        return scheduler;
+    }
+
+    // @Async默认使用名为taskExecutor的线程池
+    @Bean
+    public ThreadPoolTaskExecutor taskExecutor(){
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(executionCoreSize);
+        executor.setMaxPoolSize(executionMaxSize);
+        executor.setQueueCapacity(executionQueueCapacity);
+        executor.setThreadNamePrefix("task-");
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.setWaitForTasksToCompleteOnShutdown(true);
+        executor.setAwaitTerminationSeconds(30);
+        return executor;
+    }
+
+}
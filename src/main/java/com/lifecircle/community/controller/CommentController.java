@@ -2,6 +2,7 @@ package com.lifecircle.community.controller;
 
 import com.lifecircle.community.entity.Comment;
 import com.lifecircle.community.service.CommentService;
+import com.lifecircle.community.service.PostScoreService;
 import com.lifecircle.community.util.HostHolder;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
@@ -21,6 +22,9 @@ public class CommentController {
     @Autowired
     private HostHolder hostHolder;
 
+    @Autowired
+    private PostScoreService postScoreService;
+
     @RequestMapping(path = "/add/{discussPostId}", method = RequestMethod.POST)
     public String addComment(@PathVariable("discussPostId") int discussPostId, Comment comment){
         comment.setUserId(hostHolder.getUser().getId());
@@ -29,6 +33,9 @@ public class CommentController {
 
         commentService.addComment(comment);
 
+        // 计算帖子分数
+        postScoreService.markDirty(discussPostId);
+
         return "redirect:/discuss/detail/" + discussPostId;
     }
 
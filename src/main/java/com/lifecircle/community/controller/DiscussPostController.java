@@ -1,22 +1,23 @@
 package com.lifecircle.community.controller;
 
-import com.lifecircle.community.entity.Comment;
-import com.lifecircle.community.entity.DiscussPost;
-import com.lifecircle.community.entity.Page;
-import com.lifecircle.community.entity.User;
+import com.lifecircle.community.entity.*;
 import com.lifecircle.community.service.CommentService;
+import com.lifecircle.community.service.CommentTreeLoader;
 import com.lifecircle.community.service.DiscussPostService;
 import com.lifecircle.community.service.LikeService;
+import com.lifecircle.community.service.PostScoreService;
 import com.lifecircle.community.service.UserService;
 import com.lifecircle.community.util.CommunityConstant;
 import com.lifecircle.community.util.CommunityUtil;
 import com.lifecircle.community.util.HostHolder;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.ResponseBody;
 
 import java.util.*;
@@ -40,6 +41,16 @@ public class DiscussPostController implements CommunityConstant {
     @Autowired
     private LikeService likeService;
 
+    @Autowired
+    private CommentTreeLoader commentTreeLoader;
+
+    @Autowired
+    private PostScoreService postScoreService;
+
+    // 每次加载的回复数量，和详情页中每条评论展示的回复数量一致
+    @Value("${community.comment.reply-limit:5}")
+    private int replyLimit;
+
     @RequestMapping(path = "/add", method = RequestMethod.POST)
     @ResponseBody
     public String addDiscussPost(String title, String content){
@@ -55,6 +66,9 @@ public class DiscussPostController implements CommunityConstant {
         post.setCreateTime(new Date());
         discussPostService.addDiscussPost(post);
 
+        // 计算帖子分数
+        postScoreService.markDirty(post.getId());
+
         return CommunityUtil.getJSONString(0, "发布成功！");
     }
 
@@ -87,56 +101,47 @@ public class DiscussPostController implements CommunityConstant {
          */
 
         // 查询当前帖子所有的评论，评论列表
-        List<Comment> commentList = commentService.findCommentsByEntity(ENTITY_TYPE_POST, post.getId(), page.getOffset(), page.getLimit());
-        // 评论VO列表
-        List<Map<String, Object>> commentVoList = new ArrayList<>();
-        if(commentList != null){
-            for(Comment comment : commentList){
-                // 评论VO
-                Map<String, Object> commentVo = new HashMap<>();
-                commentVo.put("comment", comment); // 评论
-                commentVo.put("user", userService.findUserById(comment.getUserId())); // 评论的作者
-                // 点赞数量
-                likeCount = likeService.findEntityLikeCount(ENTITY_TYPE_COMMENT, comment.getId());
-                commentVo.put("likeCount", likeCount);
-                // 点赞状态
-                likeStatus = hostHolder.getUser() == null ? 0 : likeService.findEntityLikeStatus(hostHolder.getUser().getId(), ENTITY_TYPE_COMMENT, comment.getId());
-                commentVo.put("likeStatus", likeStatus);
-                // 回复列表
-                List<Comment> replyList = commentService.findCommentsByEntity(ENTITY_TYPE_COMMENT, comment.getId(), 0, Integer.MAX_VALUE);
-                // 回复VO列表
-                List<Map<String, Object>> replyVoList = new ArrayList<>();
-                if(replyList != null){
-                    for(Comment reply : replyList){
-                        Map<String, Object> replyVo = new HashMap<>();
-                        replyVo.put("reply", reply);
-                        replyVo.put("user", userService.findUserById(reply.getUserId()));
-                        // 回复目标(targetId)
-                        User target = reply.getTargetId() == 0 ? null : userService.findUserById(reply.getTargetId());
-                        replyVo.put("target", target);
-                        // 点赞数量
-                        likeCount = likeService.findEntityLikeCount(ENTITY_TYPE_COMMENT, reply.getId());
-                        replyVo.put("likeCount", likeCount);
-                        // 点赞状态
-                        likeStatus = hostHolder.getUser() == null ? 0 : likeService.findEntityLikeStatus(hostHolder.getUser().getId(), ENTITY_TYPE_COMMENT, reply.getId());
-                        replyVo.put("likeStatus", likeStatus);
-
-                        replyVoList.add(replyVo);
-                    }
-                }
-                commentVo.put("replys", replyVoList);
-
-                // 评论的回复数量
-                int replyCount = commentService.findCommentCount(ENTITY_TYPE_COMMENT, comment.getId());
-
-                commentVo.put("replyCount", replyCount);
-                commentVoList.add(commentVo);
-            }
+        List<Comment> commentList = page.isCursorMode()
+                ? commentService.findCommentsByEntityAfter(ENTITY_TYPE_POST, post.getId(), page.getCursor(), page.getLimit())
+                : commentService.findCommentsByEntity(ENTITY_TYPE_POST, post.getId(), page.getOffset(), page.getLimit());
+        if(commentList != null && commentList.size() == page.getLimit()){
+            page.setNextCursor(commentList.get(commentList.size() - 1).getId());
         }
+        // 评论VO列表，回复、作者和点赞信息都是批量加载的
+        List<CommentVo> commentVoList = commentTreeLoader.load(commentList, hostHolder.getUser() == null ? 0 : hostHolder.getUser().getId());
 
         model.addAttribute("comments", commentVoList);
 
         return "/site/discuss-detail";
     }
 
+    // 加载某条评论的更多回复
+    @RequestMapping(path = "/replies/{commentId}", method = RequestMethod.GET)
+    @ResponseBody
+    public String getReplies(@PathVariable("commentId") int commentId,
+                             @RequestParam(name = "cursor", defaultValue = "0") int cursor){
+        int userId = hostHolder.getUser() == null ? 0 : hostHolder.getUser().getId();
+        CommentVo commentVo = commentTreeLoader.loadReplies(commentId, cursor, replyLimit, userId);
+
+        // 只返回页面展示需要的字段，避免把用户的敏感信息写到响应中
+        List<Map<String, Object>> replies = new ArrayList<>();
+        for(ReplyVo replyVo : commentVo.getReplies()){
+            Map<String, Object> map = new HashMap<>();
+            map.put("id", replyVo.getReply().getId());
+            map.put("userId", replyVo.getReply().getUserId());
+            map.put("content", replyVo.getReply().getContent());
+            map.put("createTime", replyVo.getReply().getCreateTime());
+            map.put("username", replyVo.getUser() == null ? null : replyVo.getUser().getUsername());
+            map.put("targetName", replyVo.getTarget() == null ? null : replyVo.getTarget().getUsername());
+            map.put("likeCount", replyVo.getLikeCount());
+            map.put("likeStatus", replyVo.getLikeStatus());
+            replies.add(map);
+        }
+
+        Map<String, Object> map = new HashMap<>();
+        map.put("replies", replies);
+        map.put("nextCursor", commentVo.getNextCursor());
+        return CommunityUtil.getJSONString(0, null, map);
+    }
+
 }
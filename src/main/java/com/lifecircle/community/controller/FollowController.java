@@ -3,6 +3,7 @@ package com.lifecircle.community.controller;
 import com.lifecircle.community.entity.Page;
 import com.lifecircle.community.entity.User;
 import com.lifecircle.community.service.FollowService;
+import com.lifecircle.community.service.TimelineService;
 import com.lifecircle.community.service.UserService;
 import com.lifecircle.community.util.CommunityConstant;
 import com.lifecircle.community.util.CommunityUtil;
@@ -15,6 +16,8 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.ResponseBody;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -30,6 +33,9 @@ public class FollowController implements CommunityConstant {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private TimelineService timelineService;
+
 
     @RequestMapping(path = "/follow", method = RequestMethod.POST)
     @ResponseBody
@@ -37,6 +43,9 @@ public class FollowController implements CommunityConstant {
         User user = hostHolder.getUser();
 
         followService.follow(user.getId(), entityType, entityId);
+        if(entityType == ENTITY_TYPE_USER){
+            timelineService.follow(user.getId(), entityId);
+        }
 
         return CommunityUtil.getJSONString(0, "已关注！");
     }
@@ -47,6 +56,9 @@ public class FollowController implements CommunityConstant {
         User user = hostHolder.getUser();
 
         followService.unfollow(user.getId(), entityType, entityId);
+        if(entityType == ENTITY_TYPE_USER){
+            timelineService.unfollow(user.getId(), entityId);
+        }
 
         return CommunityUtil.getJSONString(0, "已取消关注！");
     }
@@ -64,12 +76,7 @@ public class FollowController implements CommunityConstant {
         page.setRows((int) followService.findFolloweeCount(userId, ENTITY_TYPE_USER));
 
         List<Map<String, Object>> userList = followService.findFollowees(userId, page.getOffset(), page.getLimit());
-        if(userList != null){
-            for(Map<String, Object> map : userList){
-                User u = (User) map.get("user");
-                map.put("hasFollowed", hasFollowed(u.getId()));
-            }
-        }
+        fillFollowStatus(userList);
         model.addAttribute("users", userList);
 
         return "/site/followee";
@@ -88,23 +95,31 @@ public class FollowController implements CommunityConstant {
         page.setRows((int) followService.findFollowerCount(ENTITY_TYPE_USER, userId));
 
         List<Map<String, Object>> userList = followService.findFollowers(userId, page.getOffset(), page.getLimit());
-        if(userList != null){
-            for(Map<String, Object> map : userList){
-                User u = (User) map.get("user");
-                map.put("hasFollowed", hasFollowed(u.getId()));
-            }
-        }
+        fillFollowStatus(userList);
         model.addAttribute("users", userList);
 
         return "/site/follower";
     }
 
-    private boolean hasFollowed(int userId){
-        if(hostHolder.getUser() == null){
-            return false;
+    // 当前用户是否已关注列表中的用户，整页只查询一次
+    private void fillFollowStatus(List<Map<String, Object>> userList){
+        if(userList == null || userList.isEmpty()){
+            return;
         }
 
-        return followService.hasFollowed(hostHolder.getUser().getId(), ENTITY_TYPE_USER, userId);
+        Map<Integer, Boolean> statuses = Collections.emptyMap();
+        if(hostHolder.getUser() != null){
+            List<Integer> userIds = new ArrayList<>(userList.size());
+            for(Map<String, Object> map : userList){
+                userIds.add(((User) map.get("user")).getId());
+            }
+            statuses = followService.hasFollowed(hostHolder.getUser().getId(), ENTITY_TYPE_USER, userIds);
+        }
+
+        for(Map<String, Object> map : userList){
+            User u = (User) map.get("user");
+            map.put("hasFollowed", statuses.getOrDefault(u.getId(), false));
+        }
     }
 
 }
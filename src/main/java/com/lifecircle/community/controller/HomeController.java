@@ -1,19 +1,23 @@
 package com.lifecircle.community.controller;
 
+import com.lifecircle.community.annotation.LoginRequired;
 import com.lifecircle.community.entity.DiscussPost;
 import com.lifecircle.community.entity.Page;
-import com.lifecircle.community.entity.User;
+import com.lifecircle.community.service.DiscussPostAssembler;
 import com.lifecircle.community.service.DiscussPostService;
-import com.lifecircle.community.service.LikeService;
-import com.lifecircle.community.service.UserService;
+import com.lifecircle.community.service.TimelineService;
 import com.lifecircle.community.util.CommunityConstant;
+import com.lifecircle.community.util.CommunityUtil;
+import com.lifecircle.community.util.HostHolder;
+import com.lifecircle.community.util.SensitiveFilter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
 
-import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -25,39 +29,68 @@ public class HomeController implements CommunityConstant {
     private DiscussPostService discussPostService;
 
     @Autowired
-    private UserService userService;
+    private DiscussPostAssembler discussPostAssembler;
 
     @Autowired
-    private LikeService likeService;
+    private SensitiveFilter sensitiveFilter;
+
+    @Autowired
+    private TimelineService timelineService;
+
+    @Autowired
+    private HostHolder hostHolder;
 
     @RequestMapping(path = "/index", method = RequestMethod.GET)
-    public String getIndexPage(Model model, Page page){
+    public String getIndexPage(Model model, Page page,
+                               @RequestParam(name = "orderMode", defaultValue = "0") int orderMode){
         // 本来在最后要加上model.addAttribute(page),
         // 但是在方法调用前，SpringMVC会自动实例化Model和Page，并将Page注入Model中
         // 所有，在thymeleaf中可以直接访问Page对象中的数据。
+        // 只支持最新(0)和最热(1)两种排序，其他值按最新处理
+        orderMode = orderMode == 1 ? 1 : 0;
         page.setRows(discussPostService.findDiscussPostRows(0));
-        page.setPath("/index");
-
-        List<DiscussPost> list = discussPostService.findDiscussPosts(0, page.getOffset(), page.getLimit());
-        List<Map<String, Object>> discussPosts = new ArrayList<>();
-        if(list != null){
-            for(DiscussPost post : list){
-                Map<String, Object> map = new HashMap<>();
-                map.put("post", post);
-                User user = userService.findUserById(post.getUserId());
-                map.put("user", user);
-
-                long likeCount = likeService.findEntityLikeCount(ENTITY_TYPE_POST, post.getId());
-                map.put("likeCount", likeCount);
-
-                discussPosts.add(map);
-            }
+        page.setPath("/index?orderMode=" + orderMode);
+
+        // 顺序翻页时按游标查询，跳转页码时按偏移量查询
+        List<DiscussPost> list = page.isCursorMode()
+                ? discussPostService.findDiscussPostsBefore(0, page.getCursor(), page.getLimit(), orderMode)
+                : discussPostService.findDiscussPosts(0, page.getOffset(), page.getLimit(), orderMode);
+        if(list != null && list.size() == page.getLimit()){
+            page.setNextCursor(list.get(list.size() - 1).getId());
         }
+        // 批量组装帖子的作者和点赞数量
+        List<Map<String, Object>> discussPosts = discussPostAssembler.assemble(list);
         model.addAttribute("discussPosts", discussPosts);
+        model.addAttribute("orderMode", orderMode);
+
+        return "/index";
+    }
+
+    // 关注的人发布的帖子，和首页使用同一个模板
+    @LoginRequired
+    @RequestMapping(path = "/following", method = RequestMethod.GET)
+    public String getFollowingPage(Model model, Page page){
+        int userId = hostHolder.getUser().getId();
+        page.setRows(timelineService.findTimelineRows(userId));
+        page.setPath("/following");
+
+        List<DiscussPost> list = timelineService.findTimeline(userId, page.getOffset(), page.getLimit());
+        model.addAttribute("discussPosts", discussPostAssembler.assemble(list));
+        // 2表示关注标签页
+        model.addAttribute("orderMode", 2);
 
         return "/index";
     }
 
+    // 当前节点已加载的敏感词版本，用来确认各个节点是否都已经更新
+    @RequestMapping(path = "/sensitive/version", method = RequestMethod.GET)
+    @ResponseBody
+    public String getSensitiveVersion(){
+        Map<String, Object> map = new HashMap<>();
+        map.put("version", sensitiveFilter.getVersion());
+        return CommunityUtil.getJSONString(0, null, map);
+    }
+
     @RequestMapping(path = "/error", method = RequestMethod.GET)
     public String getErrorPage(){
         return "/error/500";
@@ -2,6 +2,8 @@ package com.lifecircle.community.controller;
 
 import com.lifecircle.community.entity.User;
 import com.lifecircle.community.service.LikeService;
+import com.lifecircle.community.service.PostScoreService;
+import com.lifecircle.community.util.CommunityConstant;
 import com.lifecircle.community.util.CommunityUtil;
 import com.lifecircle.community.util.HostHolder;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -10,11 +12,10 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.ResponseBody;
 
-import java.util.HashMap;
 import java.util.Map;
 
 @Controller
-public class LikeController {
+public class LikeController implements CommunityConstant {
 
     @Autowired
     private LikeService likeService;
@@ -22,22 +23,21 @@ public class LikeController {
     @Autowired
     private HostHolder hostHolder;
 
+    @Autowired
+    private PostScoreService postScoreService;
+
     @RequestMapping(path = "/like", method = RequestMethod.POST)
     @ResponseBody
     public String like(int entityType, int entityId, int entityUserId){
         User user = hostHolder.getUser();
 
-        // 点赞
-        likeService.like(user.getId(), entityType, entityId, entityUserId);
-
-        // 数量
-        long likeCount = likeService.findEntityLikeCount(entityType, entityId);
-        // 状态
-        int likeStatus = likeService.findEntityLikeStatus(user.getId(), entityType, entityId);
-        // 返回结果
-        Map<String, Object> map = new HashMap<>();
-        map.put("likeCount", likeCount);
-        map.put("likeStatus", likeStatus);
+        // 点赞，同时返回点赞之后的数量和状态
+        Map<String, Object> map = likeService.like(user.getId(), entityType, entityId, entityUserId);
+
+        // 给帖子点赞时，计算帖子分数
+        if(entityType == ENTITY_TYPE_POST){
+            postScoreService.markDirty(entityId);
+        }
 
         return CommunityUtil.getJSONString(0, null, map);
     }
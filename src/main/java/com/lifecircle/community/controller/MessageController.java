@@ -1,24 +1,33 @@
 package com.lifecircle.community.controller;
 
+import com.alibaba.fastjson.JSONObject;
+import com.lifecircle.community.annotation.LoginRequired;
+import com.lifecircle.community.entity.Conversation;
 import com.lifecircle.community.entity.Message;
 import com.lifecircle.community.entity.Page;
 import com.lifecircle.community.entity.User;
+import com.lifecircle.community.service.LetterStreamService;
+import com.lifecircle.community.service.LetterUnreadService;
 import com.lifecircle.community.service.MessageService;
+import com.lifecircle.community.service.ReadReceiptWriter;
 import com.lifecircle.community.service.UserService;
+import com.lifecircle.community.util.CommunityConstant;
 import com.lifecircle.community.util.CommunityUtil;
 import com.lifecircle.community.util.HostHolder;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Controller;
 import org.springframework.ui.Model;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.ResponseBody;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import java.util.*;
 
 @Controller
-public class MessageController {
+public class MessageController implements CommunityConstant {
 
     @Autowired
     private MessageService messageService;
@@ -29,6 +38,15 @@ public class MessageController {
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private LetterUnreadService letterUnreadService;
+
+    @Autowired
+    private ReadReceiptWriter readReceiptWriter;
+
+    @Autowired
+    private LetterStreamService letterStreamService;
+
     @RequestMapping(path = "/letter/list", method = RequestMethod.GET)
     public String getLetterList(Model model, Page page){
         User user = hostHolder.getUser();
@@ -37,17 +55,25 @@ public class MessageController {
         page.setPath("/letter/list");
         page.setRows(messageService.findConversationCount(user.getId()));
 
-        // 会话列表
-        List<Message> conversationList = messageService.findConversations(user.getId(), page.getOffset(), page.getLimit());
+        // 会话列表，私信数量和未读数量都来自会话摘要
+        List<Conversation> conversationList = messageService.findConversations(user.getId(), page.getOffset(), page.getLimit());
         List<Map<String, Object>> conversations = new ArrayList<>();
         if(conversationList != null){
-            for(Message message : conversationList){
+            List<Integer> targetIds = new ArrayList<>();
+            for(Conversation conversation : conversationList){
+                Message message = conversation.getLastMessage();
+                targetIds.add(user.getId() == message.getFromId() ? message.getToId() : message.getFromId());
+            }
+            Map<Integer, User> targets = userService.findUsersByIds(targetIds);
+            Map<String, Integer> unreadCounts = letterUnreadService.findUnreadCounts(user.getId());
+
+            for(int i = 0; i < conversationList.size(); i++){
+                Conversation conversation = conversationList.get(i);
                 Map<String, Object> map = new HashMap<>();
-                map.put("conversation", message);
-                map.put("letterCount", messageService.findLetterCount(message.getConversationId()));
-                map.put("unreadCount", messageService.findLetterUnreadCount(user.getId(), message.getConversationId()));
-                int targetId = user.getId() == message.getFromId() ? message.getToId() : message.getFromId();
-                map.put("target", userService.findUserById(targetId));
+                map.put("conversation", conversation.getLastMessage());
+                map.put("letterCount", conversation.getLetterCount());
+                map.put("unreadCount", unreadCounts.getOrDefault(conversation.getConversationId(), 0));
+                map.put("target", targets.get(targetIds.get(i)));
 
                 conversations.add(map);
             }
@@ -55,8 +81,9 @@ public class MessageController {
         model.addAttribute("conversations", conversations);
 
         // 查询未读消息数量
-        int letterUnreadCount = messageService.findLetterUnreadCount(user.getId(), null);
+        int letterUnreadCount = letterUnreadService.findUnreadCount(user.getId());
         model.addAttribute("letterUnreadCount", letterUnreadCount);
+        model.addAttribute("noticeUnreadCount", messageService.findNoticeUnreadCount(user.getId(), null));
 
         return "/site/letter";
     }
@@ -66,10 +93,15 @@ public class MessageController {
         // 分页信息
         page.setLimit(5);
         page.setPath("/letter/detail/" + conversationId);
-        page.setRows(messageService.findLetterCount(conversationId));
+        page.setRows(messageService.findLetterCount(hostHolder.getUser().getId(), conversationId));
 
         // 私信列表
-        List<Message> letterList = messageService.findLetters(conversationId, page.getOffset(), page.getLimit());
+        List<Message> letterList = page.isCursorMode()
+                ? messageService.findLettersBefore(conversationId, page.getCursor(), page.getLimit())
+                : messageService.findLetters(conversationId, page.getOffset(), page.getLimit());
+        if(letterList != null && letterList.size() == page.getLimit()){
+            page.setNextCursor(letterList.get(letterList.size() - 1).getId());
+        }
         List<Map<String, Object>> letters = new ArrayList<>();
         if(letters != null){
             for(Message message : letterList){
@@ -84,10 +116,10 @@ public class MessageController {
         // 私信目标
         model.addAttribute("target", getLetterTarget(conversationId));
 
-        // 设置以读
+        // 设置以读，异步批量写入，不等待
         List<Integer> ids = getLetterIds(letterList);
         if(!ids.isEmpty()){
-            messageService.readMessage(ids);
+            readReceiptWriter.submit(ids);
         }
 
         return "/site/letter-detail";
@@ -119,6 +151,90 @@ public class MessageController {
         }
     }
 
+    @LoginRequired
+    @RequestMapping(path = "/notice/list", method = RequestMethod.GET)
+    public String getNoticeList(Model model){
+        User user = hostHolder.getUser();
+
+        // 每个主题最新的一条通知，通知数量和未读数量在同一次查询中统计
+        List<Conversation> summaries = messageService.findNoticeSummaries(user.getId());
+        List<Map<String, Object>> notices = new ArrayList<>();
+        List<Integer> userIds = new ArrayList<>();
+        for(Conversation summary : summaries){
+            Map<String, Object> map = getNoticeVo(summary.getLastMessage());
+            map.put("topic", summary.getConversationId());
+            map.put("count", summary.getLetterCount());
+            map.put("unread", summary.getUnreadCount());
+            notices.add(map);
+            userIds.add((Integer) map.get("userId"));
+        }
+        Map<Integer, User> users = userService.findUsersByIds(userIds);
+        for(Map<String, Object> map : notices){
+            map.put("user", users.get(map.get("userId")));
+        }
+        model.addAttribute("notices", notices);
+
+        // 查询未读消息数量
+        model.addAttribute("letterUnreadCount", letterUnreadService.findUnreadCount(user.getId()));
+        model.addAttribute("noticeUnreadCount", messageService.findNoticeUnreadCount(user.getId(), null));
+
+        return "/site/notice";
+    }
+
+    @LoginRequired
+    @RequestMapping(path = "/notice/detail/{topic}", method = RequestMethod.GET)
+    public String getNoticeDetail(@PathVariable("topic") String topic, Page page, Model model){
+        User user = hostHolder.getUser();
+
+        // 分页信息
+        page.setLimit(5);
+        page.setPath("/notice/detail/" + topic);
+        page.setRows(messageService.findNoticeCount(user.getId(), topic));
+
+        List<Message> noticeList = messageService.findNotices(user.getId(), topic, page.getOffset(), page.getLimit());
+        List<Map<String, Object>> notices = new ArrayList<>();
+        List<Integer> userIds = new ArrayList<>();
+        for(Message notice : noticeList){
+            Map<String, Object> map = getNoticeVo(notice);
+            notices.add(map);
+            userIds.add((Integer) map.get("userId"));
+        }
+        Map<Integer, User> users = userService.findUsersByIds(userIds);
+        for(Map<String, Object> map : notices){
+            map.put("user", users.get(map.get("userId")));
+        }
+        model.addAttribute("notices", notices);
+        model.addAttribute("topic", topic);
+
+        // 设置已读，和私信一样异步批量写入
+        List<Integer> ids = getLetterIds(noticeList);
+        if(!ids.isEmpty()){
+            readReceiptWriter.submit(ids);
+        }
+
+        return "/site/notice-detail";
+    }
+
+    // 通知的内容是触发事件的用户和实体
+    private Map<String, Object> getNoticeVo(Message notice){
+        JSONObject content = JSONObject.parseObject(notice.getContent());
+        Map<String, Object> map = new HashMap<>();
+        map.put("notice", notice);
+        map.put("userId", content.getInteger("userId"));
+        map.put("entityType", content.getInteger("entityType"));
+        map.put("entityId", content.getInteger("entityId"));
+        map.put("postId", content.getInteger("postId"));
+        return map;
+    }
+
+    // 实时接收新私信和未读数量，连接由异步Servlet保持，不占用请求线程
+    @LoginRequired
+    @RequestMapping(path = "/letter/stream", method = RequestMethod.GET, produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @ResponseBody
+    public SseEmitter getLetterStream(){
+        return letterStreamService.subscribe(hostHolder.getUser().getId());
+    }
+
     @RequestMapping(path = "/letter/send", method = RequestMethod.POST)
     @ResponseBody
     public String sendLetter(String toName, String content){
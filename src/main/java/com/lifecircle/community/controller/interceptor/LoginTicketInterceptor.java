@@ -2,20 +2,22 @@ package com.lifecircle.community.controller.interceptor;
 
 import com.lifecircle.community.entity.LoginTicket;
 import com.lifecircle.community.entity.User;
+import com.lifecircle.community.service.LetterUnreadService;
 import com.lifecircle.community.service.UserService;
 import com.lifecircle.community.util.CookieUtil;
 import com.lifecircle.community.util.HostHolder;
+import com.lifecircle.community.util.RequestCacheHolder;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
-import org.springframework.web.servlet.HandlerInterceptor;
+import org.springframework.web.servlet.AsyncHandlerInterceptor;
 import org.springframework.web.servlet.ModelAndView;
 
 import java.util.Date;
 
 @Component
-public class LoginTicketInterceptor implements HandlerInterceptor {
+public class LoginTicketInterceptor implements AsyncHandlerInterceptor {
 
     @Autowired
     private UserService userService;
@@ -23,8 +25,17 @@ public class LoginTicketInterceptor implements HandlerInterceptor {
     @Autowired
     private HostHolder hostHolder;
 
+    @Autowired
+    private RequestCacheHolder requestCacheHolder;
+
+    @Autowired
+    private LetterUnreadService letterUnreadService;
+
     @Override
     public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        // 开启本次请求的查询缓存
+        requestCacheHolder.open();
+
         // 从cookie中获取凭证
         String ticket = CookieUtil.getValue(request, "ticket");
 
@@ -47,11 +58,21 @@ public class LoginTicketInterceptor implements HandlerInterceptor {
         User user = hostHolder.getUser();
         if (user != null && modelAndView != null) {
             modelAndView.addObject("loginUser", user);
+            // 导航栏中的未读消息数量
+            modelAndView.addObject("allUnreadCount", letterUnreadService.findUnreadCount(user.getId()));
         }
     }
 
+    // 异步请求(比如私信推送)开始后不会调用afterCompletion，请求线程要在这里清理
+    @Override
+    public void afterConcurrentHandlingStarted(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        hostHolder.clear();
+        requestCacheHolder.clear();
+    }
+
     @Override
     public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) throws Exception {
         hostHolder.clear();
+        requestCacheHolder.clear();
     }
 }
@@ -4,15 +4,29 @@ import com.lifecircle.community.entity.Comment;
 import org.apache.ibatis.annotations.Mapper;
 
 import java.util.List;
+import java.util.Map;
 
 @Mapper
 public interface CommentMapper {
 
     List<Comment> selectCommentsByEntity(int entityType, int entityId, int offset, int limit);
 
+    // 批量查询多个实体的评论，每个实体最多返回limit条
+    List<Comment> selectCommentsByEntityIds(int entityType, List<Integer> entityIds, int limit);
+
+    // 游标分页查询某个实体的评论，cursor为上一批最后一条评论，只用到它的排序键
+    List<Comment> selectCommentsByEntityAfter(int entityType, int entityId, Comment cursor, int limit);
+
     int selectCountByEntity(int entityType, int entityId);
 
+    // 批量查询多个实体的评论数量，每行包含entityId和count
+    List<Map<String, Object>> selectCountByEntityIds(int entityType, List<Integer> entityIds);
+
     int insertComment(Comment comment);
 
     Comment selectCommentById(int id);
+
+    // 按主键顺序分批查询评论，lastId为上一批最后一条评论的ID
+    List<Comment> selectCommentsAfterId(int lastId, int limit);
+
 }
@@ -0,0 +1,34 @@
+package com.lifecircle.community.dao;
+
+import com.lifecircle.community.entity.Conversation;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Date;
+import java.util.List;
+
+@Mapper
+public interface ConversationMapper {
+
+    // 查询当前用户的会话列表，按最新私信倒序，同时带出最新的私信
+    List<Conversation> selectConversations(int userId, int offset, int limit);
+
+    // 查询当前用户的会话数量
+    int selectConversationCount(int userId);
+
+    // 查询当前用户的某个会话
+    Conversation selectConversation(int userId, String conversationId);
+
+    // 查询当前用户所有会话的未读私信数量
+    int selectUnreadCount(int userId);
+
+    // 查询这些用户有未读私信的会话，用于初始化和校对Redis中的未读数量
+    List<Conversation> selectUnreadConversations(@Param("userIds") List<Integer> userIds);
+
+    // 会话中新增一条私信，会话不存在时创建，unreadCount为这条私信给该用户增加的未读数量
+    int upsertConversation(int userId, String conversationId, int lastMessageId, int unreadCount, Date updatedAt);
+
+    // 私信被读取后减少未读数量
+    int decreaseUnreadCount(int userId, String conversationId, int count);
+
+}
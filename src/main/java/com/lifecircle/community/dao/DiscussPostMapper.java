@@ -10,15 +10,33 @@ import java.util.List;
 public interface DiscussPostMapper {
 
     // 该方法是查询帖子，当传入userId时，则查询某个人的帖子，当不传入时查询的是所有帖子。需要动态拼接sql语句
-    List<DiscussPost> selectDiscussPosts(int userId, int offset, int limit);
+    // orderMode为0时按最新排序，为1时按热度排序
+    List<DiscussPost> selectDiscussPosts(int userId, int offset, int limit, int orderMode);
+
+    // 游标分页查询帖子，cursor为上一页最后一条帖子，只用到它的排序键
+    List<DiscussPost> selectDiscussPostsBefore(int userId, DiscussPost cursor, int limit, int orderMode);
 
     // 该方法是查询帖子总数量，@Param注解用来给参数起别名，如果需要动态的拼接条件(比如再<if>里使用)，并且这个方法只有一个参数，那必须起别名
     int selectDiscussPostRows(@Param("userId") int userId);
 
+    // 从表统计信息中估算帖子总数量(包含已删除的帖子)
+    Integer selectDiscussPostRowsEstimate();
+
     int insertDiscussPost(DiscussPost discussPost);
 
     DiscussPost selectDiscussPostById(int id);
 
     int updateCommentCount(int id, int commentCount);
 
+    int updateStatus(int id, int status);
+
+    // 批量查询帖子，用于重新计算分数
+    List<DiscussPost> selectDiscussPostsByIds(@Param("ids") List<Integer> ids);
+
+    // 批量更新帖子的分数
+    int updateScores(@Param("posts") List<DiscussPost> posts);
+
+    // 按主键顺序分批查询帖子，lastId为上一批最后一条帖子的ID
+    List<DiscussPost> selectDiscussPostsAfterId(int lastId, int limit);
+
 }
@@ -0,0 +1,24 @@
+package com.lifecircle.community.dao;
+
+import com.lifecircle.community.entity.LikeCount;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+@Mapper
+public interface LikeCountMapper {
+
+    // 查询某个实体的点赞数量，entityType为ENTITY_TYPE_USER时表示某个用户获得的赞
+    LikeCount selectLikeCount(int entityType, int entityId);
+
+    // 批量查询多个实体的点赞数量，没有副本的实体不在结果中
+    List<LikeCount> selectLikeCountsByIds(@Param("entityType") int entityType, @Param("entityIds") List<Integer> entityIds);
+
+    // 按主键顺序分批查询，用于重建Redis中的计数，(entityType, entityId)为上一批的最后一行
+    List<LikeCount> selectLikeCountsAfter(int entityType, int entityId, int limit);
+
+    // 批量写入点赞数量，已存在的行直接覆盖
+    int upsertLikeCounts(@Param("likeCounts") List<LikeCount> likeCounts);
+
+}
@@ -1,9 +1,14 @@
 package com.lifecircle.community.dao;
 
+import com.lifecircle.community.entity.Conversation;
 import com.lifecircle.community.entity.Message;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
+import java.util.Map;
 
 @Mapper
 public interface MessageMapper {
@@ -17,6 +22,9 @@ public interface MessageMapper {
     // 查询某个会话所包含的私信列表
     List<Message> selectLetters(String conversationId, int offset, int limit);
 
+    // 游标分页查询某个会话的私信，cursor为上一页最后一条私信的ID
+    List<Message> selectLettersBefore(String conversationId, int cursor, int limit);
+
     // 查询某个会话所包含的私信数量
     int selectLetterCount(String conversationId);
 
@@ -29,4 +37,49 @@ public interface MessageMapper {
     // 修改消息的状态
     int updateStatus(List<Integer> ids, int status);
 
+    // 查询并锁定这些消息中仍然未读的私信，在事务中使用
+    List<Message> selectUnreadByIdsForUpdate(@Param("ids") List<Integer> ids);
+
+    // 查询某个会话已归档的私信，offset从归档的第一条私信开始计算
+    List<Message> selectArchivedLetters(String conversationId, int offset, int limit);
+
+    // 游标分页查询某个会话已归档的私信
+    List<Message> selectArchivedLettersBefore(String conversationId, int cursor, int limit);
+
+    // 把消息复制到归档表
+    int insertArchivedMessages(@Param("ids") List<Integer> ids);
+
+    // 删除已归档的消息
+    int deleteMessages(@Param("ids") List<Integer> ids);
+
+    // 批量新增消息
+    int insertMessages(@Param("messages") List<Message> messages);
+
+    // 按主题汇总某用户的系统通知：最新的一条通知、通知数量和未读数量，conversationId为主题
+    List<Conversation> selectNoticeSummaries(int userId);
+
+    // 查询某个主题的通知列表
+    List<Message> selectNotices(int userId, String topic, int offset, int limit);
+
+    // 查询某个主题的通知数量
+    int selectNoticeCount(int userId, String topic);
+
+    // 查询未读通知的数量，topic为null时查询所有主题
+    int selectNoticeUnreadCount(int userId, String topic);
+
+    // 查询这些会话中第一条未读私信的ID，每行包含conversationId和firstUnreadId
+    List<Map<String, Object>> selectFirstUnreadIds(@Param("conversationIds") Collection<String> conversationIds);
+
+    // 查询归档表已有的分区名
+    List<String> selectArchivePartitions();
+
+    // 从pmax中拆分出一个月份分区，lessThan为分区上界的日期(yyyy-MM-dd)
+    int splitArchivePartition(@Param("name") String name, @Param("lessThan") String lessThan);
+
+    // 按主键顺序分批查询消息，lastId为上一批最后一条消息的ID
+    List<Message> selectMessagesAfterId(int lastId, int limit);
+
+    // 删除一批在before之前的已读系统通知，返回删除的行数
+    int deleteReadNoticesBefore(Date before, int limit);
+
 }
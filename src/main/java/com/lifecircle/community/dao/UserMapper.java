@@ -2,12 +2,18 @@ package com.lifecircle.community.dao;
 
 import com.lifecircle.community.entity.User;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
 
 @Mapper
 public interface UserMapper {
 
     User selectById(int id);
 
+    // 批量查询用户，用于一次性补齐缓存未命中的用户
+    List<User> selectByIds(@Param("ids") List<Integer> ids);
+
     User selectByName(String name);
 
     User selectByEmail(String email);
@@ -0,0 +1,75 @@
+package com.lifecircle.community.entity;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 评论VO：给帖子的评论，以及它的作者、点赞信息和第一批回复
+ * 回复只加载一部分，nextCursor不为0时表示还有更多回复，可以据此继续加载
+ */
+public class CommentVo {
+
+    private Comment comment;
+    private User user;
+    private long likeCount;
+    private int likeStatus;
+    private List<ReplyVo> replies = new ArrayList<>();
+    private int replyCount;
+    private int nextCursor;
+
+    public Comment getComment() {
+        return comment;
+    }
+
+    public void setComment(Comment comment) {
+        this.comment = comment;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public void setUser(User user) {
+        this.user = user;
+    }
+
+    public long getLikeCount() {
+        return likeCount;
+    }
+
+    public void setLikeCount(long likeCount) {
+        this.likeCount = likeCount;
+    }
+
+    public int getLikeStatus() {
+        return likeStatus;
+    }
+
+    public void setLikeStatus(int likeStatus) {
+        this.likeStatus = likeStatus;
+    }
+
+    public List<ReplyVo> getReplies() {
+        return replies;
+    }
+
+    public void setReplies(List<ReplyVo> replies) {
+        this.replies = replies;
+    }
+
+    public int getReplyCount() {
+        return replyCount;
+    }
+
+    public void setReplyCount(int replyCount) {
+        this.replyCount = replyCount;
+    }
+
+    public int getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(int nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+}
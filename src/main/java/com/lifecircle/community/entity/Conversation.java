@@ -0,0 +1,83 @@
+package com.lifecircle.community.entity;
+
+import java.util.Date;
+
+public class Conversation {
+
+    private int userId;
+    private String conversationId;
+    private int lastMessageId;
+    private int letterCount;
+    private int unreadCount;
+    private Date updatedAt;
+    // 会话中最新的一条私信
+    private Message lastMessage;
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public void setUserId(int userId) {
+        this.userId = userId;
+    }
+
+    public String getConversationId() {
+        return conversationId;
+    }
+
+    public void setConversationId(String conversationId) {
+        this.conversationId = conversationId;
+    }
+
+    public int getLastMessageId() {
+        return lastMessageId;
+    }
+
+    public void setLastMessageId(int lastMessageId) {
+        this.lastMessageId = lastMessageId;
+    }
+
+    public int getLetterCount() {
+        return letterCount;
+    }
+
+    public void setLetterCount(int letterCount) {
+        this.letterCount = letterCount;
+    }
+
+    public int getUnreadCount() {
+        return unreadCount;
+    }
+
+    public void setUnreadCount(int unreadCount) {
+        this.unreadCount = unreadCount;
+    }
+
+    public Date getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(Date updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
+    public Message getLastMessage() {
+        return lastMessage;
+    }
+
+    public void setLastMessage(Message lastMessage) {
+        this.lastMessage = lastMessage;
+    }
+
+    @Override
+    public String toString() {
+        return "Conversation{" +
+                "userId=" + userId +
+                ", conversationId='" + conversationId + '\'' +
+                ", lastMessageId=" + lastMessageId +
+                ", letterCount=" + letterCount +
+                ", unreadCount=" + unreadCount +
+                ", updatedAt=" + updatedAt +
+                '}';
+    }
+}
@@ -0,0 +1,85 @@
+package com.lifecircle.community.entity;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 系统事件(评论、点赞、关注)，由EventProducer放入队列，EventConsumer转换为系统通知
+ */
+public class Event {
+
+    private String topic;
+    // 触发事件的用户
+    private int userId;
+    private int entityType;
+    private int entityId;
+    // 实体的作者，为0时由消费者查询
+    private int entityUserId;
+    private Map<String, Object> data = new HashMap<>();
+
+    public String getTopic() {
+        return topic;
+    }
+
+    public Event setTopic(String topic) {
+        this.topic = topic;
+        return this;
+    }
+
+    public int getUserId() {
+        return userId;
+    }
+
+    public Event setUserId(int userId) {
+        this.userId = userId;
+        return this;
+    }
+
+    public int getEntityType() {
+        return entityType;
+    }
+
+    public Event setEntityType(int entityType) {
+        this.entityType = entityType;
+        return this;
+    }
+
+    public int getEntityId() {
+        return entityId;
+    }
+
+    public Event setEntityId(int entityId) {
+        this.entityId = entityId;
+        return this;
+    }
+
+    public int getEntityUserId() {
+        return entityUserId;
+    }
+
+    public Event setEntityUserId(int entityUserId) {
+        this.entityUserId = entityUserId;
+        return this;
+    }
+
+    public Map<String, Object> getData() {
+        return data;
+    }
+
+    public Event setData(String key, Object value) {
+        this.data.put(key, value);
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return "Event{" +
+                "topic='" + topic + '\'' +
+                ", userId=" + userId +
+                ", entityType=" + entityType +
+                ", entityId=" + entityId +
+                ", entityUserId=" + entityUserId +
+                ", data=" + data +
+                '}';
+    }
+}
@@ -0,0 +1,50 @@
+package com.lifecircle.community.entity;
+
+public class LikeCount {
+
+    private int entityType;
+    private int entityId;
+    private long likeCount;
+
+    public LikeCount() {
+    }
+
+    public LikeCount(int entityType, int entityId, long likeCount) {
+        this.entityType = entityType;
+        this.entityId = entityId;
+        this.likeCount = likeCount;
+    }
+
+    public int getEntityType() {
+        return entityType;
+    }
+
+    public void setEntityType(int entityType) {
+        this.entityType = entityType;
+    }
+
+    public int getEntityId() {
+        return entityId;
+    }
+
+    public void setEntityId(int entityId) {
+        this.entityId = entityId;
+    }
+
+    public long getLikeCount() {
+        return likeCount;
+    }
+
+    public void setLikeCount(long likeCount) {
+        this.likeCount = likeCount;
+    }
+
+    @Override
+    public String toString() {
+        return "LikeCount{" +
+                "entityType=" + entityType +
+                ", entityId=" + entityId +
+                ", likeCount=" + likeCount +
+                '}';
+    }
+}
@@ -17,6 +17,12 @@ public class Page {
     // 查询路径(用于复用分页链接)
     private String path;
 
+    // 游标(上一页最后一条数据的ID)，不为0时从游标处向后查询，而不是按偏移量跳过前面的数据
+    private int cursor;
+
+    // 下一页的游标，为0时下一页按偏移量查询
+    private int nextCursor;
+
     public int getCurrent() {
         return current;
     }
@@ -55,6 +61,29 @@ public class Page {
         this.path = path;
     }
 
+    public int getCursor() {
+        return cursor;
+    }
+
+    public void setCursor(int cursor) {
+        if(cursor >= 0){
+            this.cursor = cursor;
+        }
+    }
+
+    public int getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(int nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    // 是否使用游标分页，顺序翻页时使用游标，跳转到指定页码时仍按偏移量查询
+    public boolean isCursorMode(){
+        return cursor > 0;
+    }
+
     // 获取当前页的起始行
     public int getOffset(){
         // current * limit - limit
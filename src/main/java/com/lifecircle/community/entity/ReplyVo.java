@@ -0,0 +1,53 @@
+package com.lifecircle.community.entity;
+
+/**
+ * 回复VO：给帖子评论的评论，以及展示它所需的作者、回复目标和点赞信息
+ */
+public class ReplyVo {
+
+    private Comment reply;
+    private User user;
+    private User target;
+    private long likeCount;
+    private int likeStatus;
+
+    public Comment getReply() {
+        return reply;
+    }
+
+    public void setReply(Comment reply) {
+        this.reply = reply;
+    }
+
+    public User getUser() {
+        return user;
+    }
+
+    public void setUser(User user) {
+        this.user = user;
+    }
+
+    public User getTarget() {
+        return target;
+    }
+
+    public void setTarget(User target) {
+        this.target = target;
+    }
+
+    public long getLikeCount() {
+        return likeCount;
+    }
+
+    public void setLikeCount(long likeCount) {
+        this.likeCount = likeCount;
+    }
+
+    public int getLikeStatus() {
+        return likeStatus;
+    }
+
+    public void setLikeStatus(int likeStatus) {
+        this.likeStatus = likeStatus;
+    }
+}
@@ -0,0 +1,198 @@
+package com.lifecircle.community.event;
+
+import com.alibaba.fastjson.JSONObject;
+import com.lifecircle.community.dao.CommentMapper;
+import com.lifecircle.community.dao.DiscussPostMapper;
+import com.lifecircle.community.dao.MessageMapper;
+import com.lifecircle.community.entity.Comment;
+import com.lifecircle.community.entity.DiscussPost;
+import com.lifecircle.community.entity.Event;
+import com.lifecircle.community.entity.Message;
+import com.lifecircle.community.util.CommunityConstant;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 把评论、点赞、关注事件转换为系统通知
+ * 每个主题由若干个线程消费，每次取出队列中已有的事件(最多一批)，查询实体的作者后一次插入所有的通知；
+ * 停机时处理完队列中剩余的事件
+ */
+@Component
+public class EventConsumer implements CommunityConstant {
+
+    private static final Logger logger = LoggerFactory.getLogger(EventConsumer.class);
+
+    private static final String[] TOPICS = {TOPIC_COMMENT, TOPIC_LIKE, TOPIC_FOLLOW};
+
+    @Autowired
+    private EventProducer eventProducer;
+
+    @Autowired
+    private MessageMapper messageMapper;
+
+    @Autowired
+    private DiscussPostMapper discussPostMapper;
+
+    @Autowired
+    private CommentMapper commentMapper;
+
+    // 每个主题的消费线程数量
+    @Value("${community.event.consumers:2}")
+    private int consumers;
+
+    // 每批插入的最大通知数量
+    @Value("${community.event.batch-size:100}")
+    private int batchSize;
+
+    private ExecutorService executor;
+
+    private volatile boolean running;
+
+    @PostConstruct
+    public void init(){
+        AtomicInteger count = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(TOPICS.length * consumers, r -> {
+            Thread thread = new Thread(r, "event-consumer-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        running = true;
+        for(String topic : TOPICS){
+            BlockingQueue<Event> queue = eventProducer.getQueue(topic);
+            for(int i = 0; i < consumers; i++){
+                executor.execute(() -> consume(queue));
+            }
+        }
+    }
+
+    private void consume(BlockingQueue<Event> queue){
+        List<Event> batch = new ArrayList<>(batchSize);
+        while(running || !queue.isEmpty()){
+            try{
+                Event event = queue.poll(1, TimeUnit.SECONDS);
+                if(event == null){
+                    continue;
+                }
+                batch.add(event);
+                queue.drainTo(batch, batchSize - 1);
+            }catch(InterruptedException e){
+                // 停机时被中断，继续把队列处理完
+                continue;
+            }
+            handle(batch);
+            batch.clear();
+        }
+    }
+
+    private void handle(List<Event> events){
+        // 同一批事件查询过的评论不再查询
+        Map<Integer, Comment> comments = new HashMap<>();
+        List<Message> notices = new ArrayList<>(events.size());
+        for(Event event : events){
+            try{
+                Message notice = toNotice(event, comments);
+                if(notice != null){
+                    notices.add(notice);
+                }
+            }catch(Exception e){
+                logger.error("处理事件失败：" + e.getMessage());
+            }
+        }
+        if(notices.isEmpty()){
+            return;
+        }
+        try{
+            messageMapper.insertMessages(notices);
+        }catch(Exception e){
+            logger.error("写入系统通知失败：" + e.getMessage());
+        }
+    }
+
+    private Message toNotice(Event event, Map<Integer, Comment> comments){
+        int entityUserId = event.getEntityUserId();
+        if(entityUserId == 0){
+            entityUserId = findEntityUserId(event.getEntityType(), event.getEntityId(), comments);
+        }
+        // 实体不存在或者是自己的操作，不发通知
+        if(entityUserId == 0 || entityUserId == event.getUserId()){
+            return null;
+        }
+
+        Map<String, Object> content = new HashMap<>();
+        content.put("userId", event.getUserId());
+        content.put("entityType", event.getEntityType());
+        content.put("entityId", event.getEntityId());
+        int postId = findPostId(event.getEntityType(), event.getEntityId(), comments);
+        if(postId != 0){
+            content.put("postId", postId);
+        }
+        content.putAll(event.getData());
+
+        Message message = new Message();
+        message.setFromId(SYSTEM_USER_ID);
+        message.setToId(entityUserId);
+        message.setConversationId(event.getTopic());
+        message.setContent(JSONObject.toJSONString(content));
+        message.setStatus(0);
+        message.setCreateTime(new Date());
+        return message;
+    }
+
+    private int findEntityUserId(int entityType, int entityId, Map<Integer, Comment> comments){
+        if(entityType == ENTITY_TYPE_POST){
+            DiscussPost post = discussPostMapper.selectDiscussPostById(entityId);
+            return post == null ? 0 : post.getUserId();
+        }
+        if(entityType == ENTITY_TYPE_COMMENT){
+            Comment comment = findComment(entityId, comments);
+            return comment == null ? 0 : comment.getUserId();
+        }
+        return entityType == ENTITY_TYPE_USER ? entityId : 0;
+    }
+
+    // 评论和回复所在的帖子，用于通知中的链接
+    private int findPostId(int entityType, int entityId, Map<Integer, Comment> comments){
+        if(entityType == ENTITY_TYPE_POST){
+            return entityId;
+        }
+        if(entityType == ENTITY_TYPE_COMMENT){
+            Comment comment = findComment(entityId, comments);
+            return comment == null ? 0 : findPostId(comment.getEntityType(), comment.getEntityId(), comments);
+        }
+        return 0;
+    }
+
+    private Comment findComment(int id, Map<Integer, Comment> comments){
+        if(!comments.containsKey(id)){
+            comments.put(id, commentMapper.selectCommentById(id));
+        }
+        return comments.get(id);
+    }
+
+    // 停机时等待消费线程处理完队列中剩余的事件
+    @PreDestroy
+    public void destroy(){
+        running = false;
+        executor.shutdownNow();
+        try{
+            if(!executor.awaitTermination(10, TimeUnit.SECONDS)){
+                logger.error("处理剩余事件超时");
+            }
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+}
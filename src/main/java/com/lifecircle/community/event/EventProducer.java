@@ -0,0 +1,55 @@
+package com.lifecircle.community.event;
+
+import com.lifecircle.community.entity.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 进程内的事件队列
+ * 每个主题一个有界队列，请求线程只把事件放入队列，不等待处理；队列满时丢弃事件，通知丢失不影响业务本身
+ */
+@Component
+public class EventProducer {
+
+    private static final Logger logger = LoggerFactory.getLogger(EventProducer.class);
+
+    // 每个主题的队列容量
+    @Value("${community.event.queue-capacity:10000}")
+    private int queueCapacity;
+
+    private final Map<String, BlockingQueue<Event>> queues = new ConcurrentHashMap<>();
+
+    BlockingQueue<Event> getQueue(String topic){
+        return queues.computeIfAbsent(topic, k -> new ArrayBlockingQueue<>(queueCapacity));
+    }
+
+    // 触发事件，在事务中调用时等到提交之后再放入队列，回滚的操作不会产生通知
+    public void fireEvent(Event event){
+        if(TransactionSynchronizationManager.isSynchronizationActive()){
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    offer(event);
+                }
+            });
+        }else{
+            offer(event);
+        }
+    }
+
+    private void offer(Event event){
+        if(!getQueue(event.getTopic()).offer(event)){
+            logger.error("事件队列已满，丢弃事件：" + event);
+        }
+    }
+
+}
@@ -0,0 +1,113 @@
+package com.lifecircle.community.service;
+
+import com.lifecircle.community.util.RedisKeyUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 用位图保存点赞关系，每个点赞用户只占1位，不需要像集合那样保存序列化之后的用户ID
+ * like:bitmap:entityType:entityId -> bitmap(userId)
+ * 位图的长度由点赞用户中最大的ID决定，点赞很少的实体反而可能比集合更占内存，适合点赞多的实体
+ */
+@Component
+@ConditionalOnProperty(name = "community.like.storage", havingValue = "bitmap")
+public class BitmapLikeStorage implements LikeStorage {
+
+    // 和SetLikeStorage的脚本一样，只是把集合的操作换成了位操作
+    private static final RedisScript<List> TOGGLE = new DefaultRedisScript<>(
+            "if redis.call('exists', KEYS[2]) == 0 or redis.call('exists', KEYS[3]) == 0 then return {-1, -1} end " +
+            "local offset = tonumber(ARGV[1]) " +
+            "if redis.call('getbit', KEYS[1], offset) == 1 then " +
+            "redis.call('setbit', KEYS[1], offset, 0) redis.call('decr', KEYS[3]) " +
+            "return {redis.call('decr', KEYS[2]), 0} end " +
+            "redis.call('setbit', KEYS[1], offset, 1) redis.call('incr', KEYS[3]) " +
+            "return {redis.call('incr', KEYS[2]), 1}",
+            List.class);
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+
+    @Override
+    public List<Long> toggle(int userId, int entityType, int entityId, int entityUserId){
+        List<String> keys = Arrays.asList(
+                RedisKeyUtil.getEntityLikeBitmapKey(entityType, entityId),
+                RedisKeyUtil.getEntityLikeCountKey(entityType, entityId),
+                RedisKeyUtil.getUserLikeKey(entityUserId));
+        return (List<Long>) redisTemplate.execute(TOGGLE, keys, userId);
+    }
+
+    @Override
+    public boolean isMember(int userId, int entityType, int entityId){
+        String bitmapKey = RedisKeyUtil.getEntityLikeBitmapKey(entityType, entityId);
+        return Boolean.TRUE.equals(redisTemplate.opsForValue().getBit(bitmapKey, userId));
+    }
+
+    // 所有的GETBIT通过管道一次发送
+    @Override
+    public List<Boolean> isMembers(int userId, int entityType, List<Integer> entityIds){
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback() {
+            @Override
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                for(Integer entityId : entityIds){
+                    String bitmapKey = RedisKeyUtil.getEntityLikeBitmapKey(entityType, entityId);
+                    operations.opsForValue().getBit(bitmapKey, userId);
+                }
+                return null;
+            }
+        });
+
+        List<Boolean> statuses = new ArrayList<>(results.size());
+        for(Object result : results){
+            statuses.add(Boolean.TRUE.equals(result));
+        }
+        return statuses;
+    }
+
+    @Override
+    public long cardinality(int entityType, int entityId){
+        byte[] bitmapKey = RedisKeyUtil.getEntityLikeBitmapKey(entityType, entityId).getBytes(StandardCharsets.UTF_8);
+        Long count = (Long) redisTemplate.execute(new RedisCallback() {
+            @Override
+            public Object doInRedis(RedisConnection connection) throws DataAccessException {
+                return connection.stringCommands().bitCount(bitmapKey);
+            }
+        });
+        return count == null ? 0 : count;
+    }
+
+    // 所有的BITCOUNT通过管道一次发送
+    @Override
+    public List<Long> cardinalities(int entityType, List<Integer> entityIds){
+        List<Object> results = redisTemplate.executePipelined(new RedisCallback() {
+            @Override
+            public Object doInRedis(RedisConnection connection) throws DataAccessException {
+                for(Integer entityId : entityIds){
+                    byte[] bitmapKey = RedisKeyUtil.getEntityLikeBitmapKey(entityType, entityId).getBytes(StandardCharsets.UTF_8);
+                    connection.stringCommands().bitCount(bitmapKey);
+                }
+                return null;
+            }
+        });
+
+        List<Long> counts = new ArrayList<>(results.size());
+        for(Object result : results){
+            counts.add(result == null ? 0 : ((Number) result).longValue());
+        }
+        return counts;
+    }
+
+}
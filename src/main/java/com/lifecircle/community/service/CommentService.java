@@ -2,6 +2,8 @@ package com.lifecircle.community.service;
 
 import com.lifecircle.community.dao.CommentMapper;
 import com.lifecircle.community.entity.Comment;
+import com.lifecircle.community.entity.Event;
+import com.lifecircle.community.event.EventProducer;
 import com.lifecircle.community.util.CommunityConstant;
 import com.lifecircle.community.util.SensitiveFilter;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -11,7 +13,9 @@ import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.util.HtmlUtils;
 
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 @Service
 public class CommentService implements CommunityConstant {
@@ -25,14 +29,40 @@ public class CommentService implements CommunityConstant {
     @Autowired
     private DiscussPostService discussPostService;
 
+    @Autowired
+    private EventProducer eventProducer;
+
     public List<Comment> findCommentsByEntity(int entityType, int entityId, int offset, int limit){
         return commentMapper.selectCommentsByEntity(entityType, entityId, offset, limit);
     }
 
+    // 批量查询多个实体的评论，每个实体最多返回limit条
+    public List<Comment> findCommentsByEntityIds(int entityType, List<Integer> entityIds, int limit){
+        return commentMapper.selectCommentsByEntityIds(entityType, entityIds, limit);
+    }
+
+    public List<Comment> findCommentsByEntityAfter(int entityType, int entityId, int cursor, int limit){
+        // 先查出游标评论的排序键，游标指向的评论不存在时从第一条开始
+        Comment comment = commentMapper.selectCommentById(cursor);
+        if(comment == null){
+            return commentMapper.selectCommentsByEntity(entityType, entityId, 0, limit);
+        }
+        return commentMapper.selectCommentsByEntityAfter(entityType, entityId, comment, limit);
+    }
+
     public int findCommentCount(int entityType, int entityId){
         return commentMapper.selectCountByEntity(entityType, entityId);
     }
 
+    // 批量查询多个实体的评论数量，没有评论的实体不在结果中
+    public Map<Integer, Integer> findCommentCounts(int entityType, List<Integer> entityIds){
+        Map<Integer, Integer> counts = new HashMap<>();
+        for(Map<String, Object> row : commentMapper.selectCountByEntityIds(entityType, entityIds)){
+            counts.put(((Number) row.get("entityId")).intValue(), ((Number) row.get("count")).intValue());
+        }
+        return counts;
+    }
+
     // 声明式事务管理，isolation:隔离级别,
     // propagation:传播机制，这表示如果当前没有事务，就新建一个事务；如果已经存在一个事务中，该方法将会加入到这个事务中。
     @Transactional(isolation = Isolation.READ_COMMITTED, propagation = Propagation.REQUIRED)
@@ -52,6 +82,15 @@ public class CommentService implements CommunityConstant {
             discussPostService.updateCommentCount(comment.getEntityId(), count);
         }
 
+        // 通知被评论的实体的作者，回复某人时通知该用户；事务提交后才放入队列
+        Event event = new Event()
+                .setTopic(TOPIC_COMMENT)
+                .setUserId(comment.getUserId())
+                .setEntityType(comment.getEntityType())
+                .setEntityId(comment.getEntityId())
+                .setEntityUserId(comment.getTargetId());
+        eventProducer.fireEvent(event);
+
         return rows;
     }
 }
@@ -0,0 +1,145 @@
+package com.lifecircle.community.service;
+
+import com.lifecircle.community.entity.Comment;
+import com.lifecircle.community.entity.CommentVo;
+import com.lifecircle.community.entity.ReplyVo;
+import com.lifecircle.community.entity.User;
+import com.lifecircle.community.util.CommunityConstant;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * 评论树加载
+ * 一页评论的所有回复、回复数量、作者以及点赞信息都是批量查询的，
+ * 不管一页有多少条评论和回复，数据库和Redis的访问次数都是固定的
+ */
+@Service
+public class CommentTreeLoader implements CommunityConstant {
+
+    @Autowired
+    private CommentService commentService;
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private LikeService likeService;
+
+    // 每条评论首次展示的回复数量，其余的回复通过游标继续加载
+    @Value("${community.comment.reply-limit:5}")
+    private int replyLimit;
+
+    // 加载一页评论，userId为当前用户，未登录时传0
+    public List<CommentVo> load(List<Comment> comments, int userId){
+        List<CommentVo> commentVoList = new ArrayList<>();
+        if(comments == null || comments.isEmpty()){
+            return commentVoList;
+        }
+
+        List<Integer> commentIds = new ArrayList<>(comments.size());
+        for(Comment comment : comments){
+            commentIds.add(comment.getId());
+        }
+
+        // 多查一条，用来判断是否还有更多回复
+        Map<Integer, List<Comment>> replyMap = new HashMap<>();
+        for(Comment reply : commentService.findCommentsByEntityIds(ENTITY_TYPE_COMMENT, commentIds, replyLimit + 1)){
+            replyMap.computeIfAbsent(reply.getEntityId(), k -> new ArrayList<>()).add(reply);
+        }
+        Map<Integer, Integer> replyCounts = commentService.findCommentCounts(ENTITY_TYPE_COMMENT, commentIds);
+
+        List<Comment> replies = new ArrayList<>();
+        for(Comment comment : comments){
+            List<Comment> list = replyMap.get(comment.getId());
+            if(list != null){
+                replies.addAll(list.subList(0, Math.min(list.size(), replyLimit)));
+            }
+        }
+
+        Lookup lookup = lookup(comments, replies, userId);
+
+        for(Comment comment : comments){
+            CommentVo commentVo = new CommentVo();
+            commentVo.setComment(comment);
+            commentVo.setUser(lookup.users.get(comment.getUserId()));
+            commentVo.setLikeCount(lookup.likeCounts.getOrDefault(comment.getId(), 0L));
+            commentVo.setLikeStatus(lookup.likeStatuses.getOrDefault(comment.getId(), 0));
+            commentVo.setReplyCount(replyCounts.getOrDefault(comment.getId(), 0));
+
+            List<Comment> list = replyMap.getOrDefault(comment.getId(), Collections.emptyList());
+            int shown = Math.min(list.size(), replyLimit);
+            for(Comment reply : list.subList(0, shown)){
+                commentVo.getReplies().add(toReplyVo(reply, lookup));
+            }
+            if(list.size() > replyLimit){
+                commentVo.setNextCursor(list.get(shown - 1).getId());
+            }
+
+            commentVoList.add(commentVo);
+        }
+
+        return commentVoList;
+    }
+
+    // 加载某条评论在游标之后的一批回复，返回的CommentVo只包含这批回复和下一批的游标
+    public CommentVo loadReplies(int commentId, int cursor, int limit, int userId){
+        // 多查一条，用来判断是否还有更多回复
+        List<Comment> list = commentService.findCommentsByEntityAfter(ENTITY_TYPE_COMMENT, commentId, cursor, limit + 1);
+        List<Comment> replies = list.subList(0, Math.min(list.size(), limit));
+        Lookup lookup = lookup(Collections.emptyList(), replies, userId);
+
+        CommentVo commentVo = new CommentVo();
+        for(Comment reply : replies){
+            commentVo.getReplies().add(toReplyVo(reply, lookup));
+        }
+        if(list.size() > limit){
+            commentVo.setNextCursor(replies.get(replies.size() - 1).getId());
+        }
+        return commentVo;
+    }
+
+    private ReplyVo toReplyVo(Comment reply, Lookup lookup){
+        ReplyVo replyVo = new ReplyVo();
+        replyVo.setReply(reply);
+        replyVo.setUser(lookup.users.get(reply.getUserId()));
+        // 回复目标(targetId)
+        replyVo.setTarget(reply.getTargetId() == 0 ? null : lookup.users.get(reply.getTargetId()));
+        replyVo.setLikeCount(lookup.likeCounts.getOrDefault(reply.getId(), 0L));
+        replyVo.setLikeStatus(lookup.likeStatuses.getOrDefault(reply.getId(), 0));
+        return replyVo;
+    }
+
+    // 一次性查出评论和回复涉及的所有用户以及点赞信息
+    private Lookup lookup(List<Comment> comments, List<Comment> replies, int userId){
+        Set<Integer> userIds = new HashSet<>();
+        List<Integer> entityIds = new ArrayList<>(comments.size() + replies.size());
+        for(Comment comment : comments){
+            userIds.add(comment.getUserId());
+            entityIds.add(comment.getId());
+        }
+        for(Comment reply : replies){
+            userIds.add(reply.getUserId());
+            if(reply.getTargetId() != 0){
+                userIds.add(reply.getTargetId());
+            }
+            entityIds.add(reply.getId());
+        }
+
+        Lookup lookup = new Lookup();
+        lookup.users = userService.findUsersByIds(userIds);
+        lookup.likeCounts = likeService.findEntityLikeCounts(ENTITY_TYPE_COMMENT, entityIds);
+        lookup.likeStatuses = userId == 0 ? Collections.emptyMap()
+                : likeService.findEntityLikeStatuses(userId, ENTITY_TYPE_COMMENT, entityIds);
+        return lookup;
+    }
+
+    private static class Lookup {
+        private Map<Integer, User> users;
+        private Map<Integer, Long> likeCounts;
+        private Map<Integer, Integer> likeStatuses;
+    }
+
+}
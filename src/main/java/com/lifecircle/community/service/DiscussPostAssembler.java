@@ -0,0 +1,52 @@
+package com.lifecircle.community.service;
+
+import com.lifecircle.community.entity.DiscussPost;
+import com.lifecircle.community.entity.User;
+import com.lifecircle.community.util.CommunityConstant;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * 帖子列表的视图组装
+ * 先收集一页帖子涉及的所有作者ID和帖子ID，再分别批量查询作者和点赞数量，
+ * 避免逐条帖子查询用户和点赞数量带来的N+1次网络往返
+ */
+@Service
+public class DiscussPostAssembler implements CommunityConstant {
+
+    @Autowired
+    private UserService userService;
+
+    @Autowired
+    private LikeService likeService;
+
+    public List<Map<String, Object>> assemble(List<DiscussPost> posts){
+        List<Map<String, Object>> discussPosts = new ArrayList<>();
+        if(posts == null || posts.isEmpty()){
+            return discussPosts;
+        }
+
+        Set<Integer> userIds = new LinkedHashSet<>();
+        List<Integer> postIds = new ArrayList<>(posts.size());
+        for(DiscussPost post : posts){
+            userIds.add(post.getUserId());
+            postIds.add(post.getId());
+        }
+
+        Map<Integer, User> users = userService.findUsersByIds(userIds);
+        Map<Integer, Long> likeCounts = likeService.findEntityLikeCounts(ENTITY_TYPE_POST, postIds);
+
+        for(DiscussPost post : posts){
+            Map<String, Object> map = new HashMap<>();
+            map.put("post", post);
+            map.put("user", users.get(post.getUserId()));
+            map.put("likeCount", likeCounts.getOrDefault(post.getId(), 0L));
+            discussPosts.add(map);
+        }
+
+        return discussPosts;
+    }
+
+}
@@ -0,0 +1,93 @@
+package com.lifecircle.community.service;
+
+import com.lifecircle.community.dao.DiscussPostMapper;
+import com.lifecircle.community.util.RedisKeyUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 帖子数量统计
+ * 全站和每个用户的帖子数量缓存在Redis中，发帖和帖子状态变化时增量维护，
+ * 缓存过期后从数据库重建，全站数量另外由定时任务定期校正
+ */
+@Service
+public class DiscussPostCountService {
+
+    private static final Logger logger = LoggerFactory.getLogger(DiscussPostCountService.class);
+
+    // 只有缓存存在时才做增量，避免缓存过期后被INCR成一个从0开始的错误数量
+    private static final RedisScript<Long> INCREMENT_IF_EXISTS = new DefaultRedisScript<>(
+            "if redis.call('exists', KEYS[1]) == 1 then return redis.call('incrby', KEYS[1], ARGV[1]) end return nil",
+            Long.class);
+
+    @Autowired
+    private DiscussPostMapper discussPostMapper;
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+
+    // 帖子数量缓存的过期时间
+    @Value("${community.post.count.expire-seconds:3600}")
+    private int expireSeconds;
+
+    // 全站帖子数量超过这个值时，改用表统计信息中的估算值，为0时总是精确统计
+    @Value("${community.post.count.approximate-threshold:0}")
+    private int approximateThreshold;
+
+    // 查询帖子数量，userId为0时查询全站的帖子数量
+    public int findCount(int userId){
+        String redisKey = RedisKeyUtil.getPostCountKey(userId);
+        Integer count = (Integer) redisTemplate.opsForValue().get(redisKey);
+        if(count != null){
+            return count;
+        }
+        return initCount(userId);
+    }
+
+    // 帖子数量发生变化时，同时更新全站和该用户的帖子数量
+    public void increment(int userId, int delta){
+        redisTemplate.execute(INCREMENT_IF_EXISTS, Collections.singletonList(RedisKeyUtil.getPostCountKey(0)), delta);
+        if(userId != 0){
+            redisTemplate.execute(INCREMENT_IF_EXISTS, Collections.singletonList(RedisKeyUtil.getPostCountKey(userId)), delta);
+        }
+    }
+
+    // 定时从数据库重新统计全站的帖子数量，修正增量维护可能产生的偏差
+    @Scheduled(fixedDelayString = "${community.post.count.refresh-interval:600000}")
+    public void refreshGlobalCount(){
+        try{
+            initCount(0);
+        }catch(Exception e){
+            logger.error("刷新帖子数量失败：" + e.getMessage());
+        }
+    }
+
+    private int initCount(int userId){
+        int count = countFromDatabase(userId);
+        String redisKey = RedisKeyUtil.getPostCountKey(userId);
+        redisTemplate.opsForValue().set(redisKey, count, expireSeconds, TimeUnit.SECONDS);
+        return count;
+    }
+
+    private int countFromDatabase(int userId){
+        if(userId == 0 && approximateThreshold > 0){
+            // 估算值来自information_schema，包含已删除的帖子，只适合展示分页
+            Integer estimate = discussPostMapper.selectDiscussPostRowsEstimate();
+            if(estimate != null && estimate >= approximateThreshold){
+                return estimate;
+            }
+        }
+        return discussPostMapper.selectDiscussPostRows(userId);
+    }
+
+}
@@ -18,12 +18,43 @@ public class DiscussPostService {
     @Autowired
     private SensitiveFilter sensitiveFilter;
 
-    public List<DiscussPost> findDiscussPosts(int userId, int offset, int limit){
-        return discussPostMapper.selectDiscussPosts(userId, offset, limit);
+    @Autowired
+    private DiscussPostCountService discussPostCountService;
+
+    @Autowired
+    private FeedCacheService feedCacheService;
+
+    @Autowired
+    private TimelineService timelineService;
+
+    public List<DiscussPost> findDiscussPosts(int userId, int offset, int limit, int orderMode){
+        // 首页的前几页从缓存中取
+        if(userId == 0){
+            List<DiscussPost> list = feedCacheService.find(offset, limit, orderMode);
+            if(list != null){
+                return list;
+            }
+        }
+        return discussPostMapper.selectDiscussPosts(userId, offset, limit, orderMode);
+    }
+
+    public List<DiscussPost> findDiscussPostsBefore(int userId, int cursor, int limit, int orderMode){
+        if(userId == 0){
+            List<DiscussPost> list = feedCacheService.findBefore(cursor, limit, orderMode);
+            if(list != null){
+                return list;
+            }
+        }
+        // 先查出游标帖子的排序键，游标指向的帖子不存在时从第一页开始
+        DiscussPost post = discussPostMapper.selectDiscussPostById(cursor);
+        if(post == null){
+            return findDiscussPosts(userId, 0, limit, orderMode);
+        }
+        return discussPostMapper.selectDiscussPostsBefore(userId, post, limit, orderMode);
     }
 
     public int findDiscussPostRows(int userId){
-        return discussPostMapper.selectDiscussPostRows(userId);
+        return discussPostCountService.findCount(userId);
     }
 
     public int addDiscussPost(DiscussPost post){
@@ -39,7 +70,14 @@ public class DiscussPostService {
         post.setTitle(sensitiveFilter.filter(post.getTitle()));
         post.setContent(sensitiveFilter.filter(post.getContent()));
 
-        return discussPostMapper.insertDiscussPost(post);
+        int rows = discussPostMapper.insertDiscussPost(post);
+        discussPostCountService.increment(post.getUserId(), rows);
+        if(rows > 0 && post.getStatus() != 2){
+            feedCacheService.add(post);
+            // 推送到粉丝的关注动态
+            timelineService.push(post);
+        }
+        return rows;
     }
 
     public DiscussPost findDiscussPostById(int id){
@@ -50,4 +88,23 @@ public class DiscussPostService {
         return discussPostMapper.updateCommentCount(id, commentCount);
     }
 
+    // 修改帖子状态，0-正常，1-置顶/加精，2-删除
+    public int updateStatus(int id, int status){
+        DiscussPost post = discussPostMapper.selectDiscussPostById(id);
+        if(post == null){
+            throw new IllegalArgumentException("帖子不存在！");
+        }
+
+        int rows = discussPostMapper.updateStatus(id, status);
+
+        // 删除或恢复帖子时，帖子数量随之变化
+        if(post.getStatus() != 2 && status == 2){
+            discussPostCountService.increment(post.getUserId(), -1);
+            feedCacheService.remove(id);
+        }else if(post.getStatus() == 2 && status != 2){
+            discussPostCountService.increment(post.getUserId(), 1);
+        }
+        return rows;
+    }
+
 }
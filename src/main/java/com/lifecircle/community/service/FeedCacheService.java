@@ -0,0 +1,228 @@
+package com.lifecircle.community.service;
+
+import com.lifecircle.community.dao.DiscussPostMapper;
+import com.lifecircle.community.entity.DiscussPost;
+import com.lifecircle.community.util.RedisKeyUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 首页帖子列表的缓存
+ * 每种排序(最新、最热)的前N个帖子ID保存在Redis的有序集合中，各个节点共享，
+ * 每个节点再定时把这N个帖子加载成一份不可变的本地快照，首页的前几页直接从快照中取，
+ * 更深的页再查询数据库
+ */
+@Service
+public class FeedCacheService {
+
+    private static final Logger logger = LoggerFactory.getLogger(FeedCacheService.class);
+
+    // 排序方式：最新、最热
+    private static final int[] ORDER_MODES = {0, 1};
+
+    @Autowired
+    private DiscussPostMapper discussPostMapper;
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+
+    @Autowired
+    private DiscussPostCountService discussPostCountService;
+
+    // 每种排序缓存的帖子数量
+    @Value("${community.feed.size:100}")
+    private int size;
+
+    // 有序集合的过期时间，过期后从数据库重建，修正增量维护可能产生的偏差
+    @Value("${community.feed.expire-seconds:3600}")
+    private int expireSeconds;
+
+    // 本地快照，key为排序方式，快照本身不会被修改，只会被整体替换
+    private final Map<Integer, Snapshot> snapshots = new ConcurrentHashMap<>();
+
+    private static class Snapshot {
+
+        private final List<DiscussPost> posts;
+
+        // 快照是否包含了全部帖子(帖子总数不足N个)，此时任意页都可以从快照中取
+        private final boolean complete;
+
+        private Snapshot(List<DiscussPost> posts, boolean complete) {
+            this.posts = Collections.unmodifiableList(posts);
+            this.complete = complete;
+        }
+    }
+
+    // 从快照中按偏移量取一页帖子，快照不能覆盖这一页时返回null
+    public List<DiscussPost> find(int offset, int limit, int orderMode){
+        Snapshot snapshot = snapshots.get(orderMode);
+        if(snapshot == null){
+            return null;
+        }
+        List<DiscussPost> posts = snapshot.posts;
+        if(offset + limit > posts.size() && !snapshot.complete){
+            return null;
+        }
+        return new ArrayList<>(posts.subList(Math.min(offset, posts.size()), Math.min(offset + limit, posts.size())));
+    }
+
+    // 从快照中按游标取一页帖子，快照不能覆盖这一页时返回null
+    public List<DiscussPost> findBefore(int cursor, int limit, int orderMode){
+        Snapshot snapshot = snapshots.get(orderMode);
+        if(snapshot == null){
+            return null;
+        }
+        List<DiscussPost> posts = snapshot.posts;
+        for(int i = 0; i < posts.size(); i++){
+            if(posts.get(i).getId() == cursor){
+                return find(i + 1, limit, orderMode);
+            }
+        }
+        return null;
+    }
+
+    // 新增帖子：放入最新列表的有序集合和本地快照，新帖子还没有分数，等计算出分数后再进入最热列表
+    public void add(DiscussPost post){
+        String redisKey = RedisKeyUtil.getFeedKey(0);
+        if(Boolean.TRUE.equals(redisTemplate.hasKey(redisKey))){
+            redisTemplate.opsForZSet().add(redisKey, post.getId(), feedScore(post, 0));
+            redisTemplate.opsForZSet().removeRange(redisKey, 0, -size - 1);
+        }
+
+        // 在compute中修改，同一种排序的修改和定时刷新不会互相覆盖
+        snapshots.computeIfPresent(0, (orderMode, snapshot) -> {
+            List<DiscussPost> posts = new ArrayList<>(snapshot.posts);
+            // 置顶的帖子总是在最前面
+            int index = 0;
+            while(index < posts.size() && posts.get(index).getType() > post.getType()){
+                index++;
+            }
+            posts.add(index, post);
+            boolean complete = snapshot.complete;
+            if(posts.size() > size){
+                posts = posts.subList(0, size);
+                complete = false;
+            }
+            return new Snapshot(new ArrayList<>(posts), complete);
+        });
+    }
+
+    // 帖子的分数更新后，同步到最热列表的有序集合
+    public void updateScores(List<DiscussPost> posts){
+        String redisKey = RedisKeyUtil.getFeedKey(1);
+        if(posts.isEmpty() || !Boolean.TRUE.equals(redisTemplate.hasKey(redisKey))){
+            return;
+        }
+        redisTemplate.executePipelined(new SessionCallback() {
+            @Override
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                for(DiscussPost post : posts){
+                    operations.opsForZSet().add(redisKey, post.getId(), feedScore(post, 1));
+                }
+                operations.opsForZSet().removeRange(redisKey, 0, -size - 1);
+                return null;
+            }
+        });
+    }
+
+    // 删除帖子：从所有列表中移除
+    public void remove(int postId){
+        for(int orderMode : ORDER_MODES){
+            redisTemplate.opsForZSet().remove(RedisKeyUtil.getFeedKey(orderMode), postId);
+
+            snapshots.computeIfPresent(orderMode, (k, snapshot) -> {
+                List<DiscussPost> posts = new ArrayList<>(snapshot.posts);
+                // 移除之后剩下的仍然是前面的帖子，只是快照能覆盖的页数少了
+                posts.removeIf(post -> post.getId() == postId);
+                return new Snapshot(posts, snapshot.complete);
+            });
+        }
+    }
+
+    // 定时重新加载本地快照，其他节点的修改最多在这段时间之后可见
+    // 加载期间快照被本节点修改过时放弃这次加载，避免覆盖新的修改，下次刷新时再加载
+    @Scheduled(fixedDelayString = "${community.feed.refresh-interval:5000}")
+    public void refresh(){
+        for(int orderMode : ORDER_MODES){
+            Snapshot before = snapshots.get(orderMode);
+            try{
+                Snapshot loaded = load(orderMode);
+                snapshots.compute(orderMode, (k, current) -> current == before ? loaded : current);
+            }catch(Exception e){
+                // 加载失败时丢弃快照，请求直接查询数据库
+                snapshots.remove(orderMode, before);
+                logger.error("加载首页缓存失败：" + e.getMessage());
+            }
+        }
+    }
+
+    private Snapshot load(int orderMode){
+        String redisKey = RedisKeyUtil.getFeedKey(orderMode);
+        Set<Object> members = redisTemplate.opsForZSet().reverseRange(redisKey, 0, size - 1);
+        if(members == null || members.isEmpty()){
+            return rebuild(orderMode);
+        }
+
+        List<Integer> ids = new ArrayList<>(members.size());
+        for(Object member : members){
+            ids.add((Integer) member);
+        }
+        Map<Integer, DiscussPost> postMap = new HashMap<>();
+        for(DiscussPost post : discussPostMapper.selectDiscussPostsByIds(ids)){
+            postMap.put(post.getId(), post);
+        }
+
+        // 按有序集合中的顺序排列，已删除的帖子跳过
+        List<DiscussPost> posts = new ArrayList<>(ids.size());
+        for(Integer id : ids){
+            DiscussPost post = postMap.get(id);
+            if(post != null && post.getStatus() != 2){
+                posts.add(post);
+            }
+        }
+        // 有序集合中的帖子可能被删除过，只有和帖子总数一致时才认为包含了全部帖子
+        boolean complete = ids.size() < size && posts.size() >= discussPostCountService.findCount(0);
+        return new Snapshot(posts, complete);
+    }
+
+    // 从数据库查询前N个帖子，重建有序集合
+    private Snapshot rebuild(int orderMode){
+        List<DiscussPost> posts = discussPostMapper.selectDiscussPosts(0, 0, size, orderMode);
+        if(!posts.isEmpty()){
+            String redisKey = RedisKeyUtil.getFeedKey(orderMode);
+            redisTemplate.executePipelined(new SessionCallback() {
+                @Override
+                public Object execute(RedisOperations operations) throws DataAccessException {
+                    operations.delete(redisKey);
+                    for(DiscussPost post : posts){
+                        operations.opsForZSet().add(redisKey, post.getId(), feedScore(post, orderMode));
+                    }
+                    operations.expire(redisKey, expireSeconds, TimeUnit.SECONDS);
+                    return null;
+                }
+            });
+        }
+        return new Snapshot(posts, posts.size() < size);
+    }
+
+    // 有序集合中的分数，置顶的帖子(type=1)加上一个足够大的值，保证排在前面
+    private static double feedScore(DiscussPost post, int orderMode){
+        if(orderMode == 1){
+            return post.getType() * 1e6 + post.getScore();
+        }
+        return post.getType() * 1e13 + post.getCreateTime().getTime();
+    }
+
+}
@@ -1,41 +1,142 @@
 package com.lifecircle.community.service;
 
+import com.lifecircle.community.entity.Event;
 import com.lifecircle.community.entity.User;
+import com.lifecircle.community.event.EventProducer;
 import com.lifecircle.community.util.CommunityConstant;
 import com.lifecircle.community.util.RedisKeyUtil;
+import com.lifecircle.community.util.RequestCacheHolder;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataAccessException;
 import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
 
+/**
+ * 关注
+ * 粉丝数量达到阈值的实体改为分散存储：粉丝按userId分散到N个子集合中，避免所有的关注和取消关注都落在同一个key上，
+ * 原来的集合在后台逐批迁移到子集合，迁移期间读取时合并原集合和所有子集合，粉丝数量汇总后缓存一段时间
+ */
 @Service
 public class FollowService implements CommunityConstant {
 
+    private static final Logger logger = LoggerFactory.getLogger(FollowService.class);
+
+    // 粉丝的关注时间仍为ARGV[2]时才删除，只操作一个key，在集群中不会跨槽
+    private static final RedisScript<Long> REMOVE_IF_SCORE = new DefaultRedisScript<>(
+            "local score = redis.call('zscore', KEYS[1], ARGV[1]) " +
+            "if score and tonumber(score) == tonumber(ARGV[2]) then return redis.call('zrem', KEYS[1], ARGV[1]) end " +
+            "return 0",
+            Long.class);
+
     @Autowired
     private RedisTemplate redisTemplate;
 
     @Autowired
     private UserService userService;
 
+    @Autowired
+    private RequestCacheHolder requestCacheHolder;
+
+    @Autowired
+    private EventProducer eventProducer;
+
+    // 是否在粉丝数量达到阈值时自动切换为分散存储，已经切换的实体不受影响
+    @Value("${community.follow.shard.enabled:false}")
+    private boolean shardEnabled;
+
+    // 切换为分散存储的粉丝数量
+    @Value("${community.follow.shard.threshold:10000}")
+    private long shardThreshold;
+
+    // 子集合的数量，切换之后不能再修改
+    @Value("${community.follow.shard.count:16}")
+    private int shardCount;
+
+    // 汇总的粉丝数量的缓存时间
+    @Value("${community.follow.shard.count-expire-seconds:60}")
+    private int countExpireSeconds;
+
+    // 每批迁移的粉丝数量
+    @Value("${community.follow.shard.batch-size:1000}")
+    private int batchSize;
+
+    // 已分散存储的实体(entityType:entityId)，由定时任务从Redis同步，只会增加不会减少
+    private volatile Set<String> shardedEntities = Collections.emptySet();
+
+    @PostConstruct
+    public void init(){
+        try{
+            shardedEntities = loadShardedEntities();
+        }catch(Exception e){
+            logger.error("加载分散存储的实体失败：" + e.getMessage());
+        }
+    }
+
+    private boolean isSharded(int entityType, int entityId){
+        return shardedEntities.contains(entityType + ":" + entityId);
+    }
+
+    private String getShardKey(int entityType, int entityId, int userId){
+        return RedisKeyUtil.getFollowerShardKey(entityType, entityId, Math.floorMod(userId, shardCount));
+    }
+
     public void follow(int userId, int entityType, int entityId){
-        redisTemplate.execute(new SessionCallback() {
+        boolean sharded = isSharded(entityType, entityId);
+        List<Object> results = (List<Object>) redisTemplate.execute(new SessionCallback() {
             @Override
             public Object execute(RedisOperations operations) throws DataAccessException {
                 String followeeKey = RedisKeyUtil.getFolloweeKey(userId, entityType);
-                String followerKey = RedisKeyUtil.getFollowerKey(entityType, entityId);
+                String followerKey = sharded
+                        ? getShardKey(entityType, entityId, userId)
+                        : RedisKeyUtil.getFollowerKey(entityType, entityId);
 
                 operations.multi();
 
                 operations.opsForZSet().add(followeeKey, entityId, System.currentTimeMillis());
                 operations.opsForZSet().add(followerKey, userId, System.currentTimeMillis());
+                operations.opsForZSet().zCard(followerKey);
 
                 return operations.exec();
             }
         });
+
+        // 粉丝数量达到阈值时切换为分散存储，由定时任务迁移已有的粉丝
+        if(!sharded && shardEnabled && results != null && results.size() == 3
+                && ((Number) results.get(2)).longValue() >= shardThreshold){
+            String entity = entityType + ":" + entityId;
+            redisTemplate.opsForSet().add(RedisKeyUtil.getFollowerShardedKey(), entity);
+            Set<String> entities = new HashSet<>(shardedEntities);
+            entities.add(entity);
+            shardedEntities = Collections.unmodifiableSet(entities);
+            logger.info("实体的粉丝改为分散存储：" + entity);
+        }
+
+        // 关注用户时通知被关注的人，重复关注不再通知
+        if(entityType == ENTITY_TYPE_USER && results != null && results.size() == 3 && Boolean.TRUE.equals(results.get(1))){
+            Event event = new Event()
+                    .setTopic(TOPIC_FOLLOW)
+                    .setUserId(userId)
+                    .setEntityType(entityType)
+                    .setEntityId(entityId)
+                    .setEntityUserId(entityId);
+            eventProducer.fireEvent(event);
+        }
+
+        evictRequestCache(userId, entityType, entityId);
     }
 
     public void unfollow(int userId, int entityType, int entityId){
@@ -49,68 +150,286 @@ public class FollowService implements CommunityConstant {
 
                 operations.opsForZSet().remove(followeeKey, entityId);
                 operations.opsForZSet().remove(followerKey, userId);
+                // 其他节点可能还不知道该实体已经分散存储，原集合和子集合都要删除，迁移时才不会把已取消的关注带过去
+                operations.opsForZSet().remove(getShardKey(entityType, entityId, userId), userId);
 
                 return operations.exec();
             }
         });
+
+        evictRequestCache(userId, entityType, entityId);
     }
 
     // 查询关注的实体的数量
     public long findFolloweeCount(int userId, int entityType){
         String followeeKey = RedisKeyUtil.getFolloweeKey(userId, entityType);
-        return redisTemplate.opsForZSet().zCard(followeeKey);
+        return requestCacheHolder.get("count:" + followeeKey, () -> redisTemplate.opsForZSet().zCard(followeeKey));
     }
 
     // 查询实体的粉丝数量
     public long findFollowerCount(int entityType, int entityId){
         String followerKey = RedisKeyUtil.getFollowerKey(entityType, entityId);
-        return redisTemplate.opsForZSet().zCard(followerKey);
+        if(isSharded(entityType, entityId)){
+            return requestCacheHolder.get("count:" + followerKey, () -> findShardedFollowerCount(entityType, entityId));
+        }
+        return requestCacheHolder.get("count:" + followerKey, () -> redisTemplate.opsForZSet().zCard(followerKey));
+    }
+
+    // 分散存储的粉丝数量：优先取缓存，缓存过期后用管道汇总原集合和所有子集合的ZCARD
+    // 迁移期间同一个粉丝可能同时在原集合和子集合中，数量会略多，在缓存时间内也不反映最新的关注
+    private long findShardedFollowerCount(int entityType, int entityId){
+        String countKey = RedisKeyUtil.getFollowerCountKey(entityType, entityId);
+        Object cached = redisTemplate.opsForValue().get(countKey);
+        if(cached != null){
+            return ((Number) cached).longValue();
+        }
+
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback() {
+            @Override
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                operations.opsForZSet().zCard(RedisKeyUtil.getFollowerKey(entityType, entityId));
+                for(int shard = 0; shard < shardCount; shard++){
+                    operations.opsForZSet().zCard(RedisKeyUtil.getFollowerShardKey(entityType, entityId, shard));
+                }
+                return null;
+            }
+        });
+        long count = 0;
+        for(Object result : results){
+            count += result == null ? 0 : ((Number) result).longValue();
+        }
+        redisTemplate.opsForValue().set(countKey, count, countExpireSeconds, TimeUnit.SECONDS);
+        return count;
+    }
+
+    // 按关注时间倒序查询关注时间不晚于max的粉丝(包括max)，最多limit个，用于在粉丝列表变化时稳定地遍历所有粉丝
+    // 分散存储时从原集合和每个子集合各取limit个，合并后再截取
+    public List<ZSetOperations.TypedTuple<Integer>> findFollowersByScore(int entityType, int entityId, double max, int limit){
+        String followerKey = RedisKeyUtil.getFollowerKey(entityType, entityId);
+        boolean sharded = isSharded(entityType, entityId);
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback() {
+            @Override
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                operations.opsForZSet().reverseRangeByScoreWithScores(followerKey, Double.NEGATIVE_INFINITY, max, 0, limit);
+                if(sharded){
+                    for(int shard = 0; shard < shardCount; shard++){
+                        operations.opsForZSet().reverseRangeByScoreWithScores(
+                                RedisKeyUtil.getFollowerShardKey(entityType, entityId, shard), Double.NEGATIVE_INFINITY, max, 0, limit);
+                    }
+                }
+                return null;
+            }
+        });
+        return mergeFollowers(results, 0, limit);
+    }
+
+    // 按关注时间倒序查询实体的一段粉丝和关注时间
+    // 分散存储时从原集合和每个子集合各取前offset+limit个，合并后再截取这一段
+    private List<ZSetOperations.TypedTuple<Integer>> rangeFollowers(int entityType, int entityId, int offset, int limit){
+        String followerKey = RedisKeyUtil.getFollowerKey(entityType, entityId);
+        int end = offset + limit - 1;
+        if(!isSharded(entityType, entityId)){
+            Set<ZSetOperations.TypedTuple<Integer>> tuples =
+                    redisTemplate.opsForZSet().reverseRangeWithScores(followerKey, offset, end);
+            return tuples == null ? new ArrayList<>() : new ArrayList<>(tuples);
+        }
+
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback() {
+            @Override
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                operations.opsForZSet().reverseRangeWithScores(followerKey, 0, end);
+                for(int shard = 0; shard < shardCount; shard++){
+                    operations.opsForZSet().reverseRangeWithScores(
+                            RedisKeyUtil.getFollowerShardKey(entityType, entityId, shard), 0, end);
+                }
+                return null;
+            }
+        });
+
+        return mergeFollowers(results, offset, limit);
+    }
+
+    // 合并多个集合中的粉丝，按关注时间倒序排列后截取一段
+    // 迁移期间同一个粉丝可能出现两次，保留较晚的关注时间
+    private List<ZSetOperations.TypedTuple<Integer>> mergeFollowers(List<Object> results, int offset, int limit){
+        Map<Integer, ZSetOperations.TypedTuple<Integer>> merged = new HashMap<>();
+        for(Object result : results){
+            if(result == null){
+                continue;
+            }
+            for(Object item : (Set<?>) result){
+                ZSetOperations.TypedTuple<Integer> tuple = (ZSetOperations.TypedTuple<Integer>) item;
+                merged.merge(tuple.getValue(), tuple, (a, b) -> a.getScore() >= b.getScore() ? a : b);
+            }
+        }
+        List<ZSetOperations.TypedTuple<Integer>> tuples = new ArrayList<>(merged.values());
+        tuples.sort((a, b) -> {
+            int c = Double.compare(b.getScore(), a.getScore());
+            return c != 0 ? c : Integer.compare(b.getValue(), a.getValue());
+        });
+        if(offset >= tuples.size()){
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(tuples.subList(offset, Math.min(offset + limit, tuples.size())));
+    }
+
+    // 同步已分散存储的实体，并把它们原集合中剩余的粉丝迁移到子集合
+    @Scheduled(fixedDelayString = "${community.follow.shard.refresh-interval:10000}")
+    public void refreshSharded(){
+        try{
+            shardedEntities = loadShardedEntities();
+            for(String entity : shardedEntities){
+                String[] parts = entity.split(":");
+                migrate(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+            }
+        }catch(Exception e){
+            logger.error("迁移分散存储的粉丝失败：" + e.getMessage());
+        }
+    }
+
+    private Set<String> loadShardedEntities(){
+        Set<Object> members = redisTemplate.opsForSet().members(RedisKeyUtil.getFollowerShardedKey());
+        Set<String> entities = new HashSet<>();
+        if(members != null){
+            for(Object member : members){
+                entities.add(member.toString());
+            }
+        }
+        return Collections.unmodifiableSet(entities);
+    }
+
+    // 每批从原集合取出一部分粉丝和关注时间，逐个移到对应的子集合，原集合为空时结束
+    // 原集合和子集合可能位于集群的不同槽，不能在一个脚本中同时操作，所以每一步都只操作一个key：
+    // 1. ZADD NX写入子集合，子集合中已有的(切换后重新关注的)较新的关注时间不会被覆盖
+    // 2. 关注时间没有变化时才从原集合删除
+    // 3. 原集合中的粉丝已经变化(取出之后取消了关注或者重新关注)，撤销第1步写入的副本，重新关注的粉丝由下一批迁移
+    private void migrate(int entityType, int entityId){
+        String followerKey = RedisKeyUtil.getFollowerKey(entityType, entityId);
+        int total = 0;
+        while(true){
+            Set<ZSetOperations.TypedTuple<Integer>> tuples =
+                    redisTemplate.opsForZSet().rangeWithScores(followerKey, 0, batchSize - 1);
+            if(tuples == null || tuples.isEmpty()){
+                break;
+            }
+            List<ZSetOperations.TypedTuple<Integer>> followers = new ArrayList<>(tuples);
+
+            redisTemplate.executePipelined(new SessionCallback() {
+                @Override
+                public Object execute(RedisOperations operations) throws DataAccessException {
+                    for(ZSetOperations.TypedTuple<Integer> follower : followers){
+                        operations.opsForZSet().addIfAbsent(getShardKey(entityType, entityId, follower.getValue()),
+                                follower.getValue(), follower.getScore());
+                    }
+                    return null;
+                }
+            });
+            List<Object> removed = removeIfScore(followers, follower -> followerKey);
+
+            List<ZSetOperations.TypedTuple<Integer>> changed = new ArrayList<>();
+            for(int i = 0; i < followers.size(); i++){
+                if(removed.get(i) != null && ((Number) removed.get(i)).longValue() > 0){
+                    total++;
+                }else{
+                    changed.add(followers.get(i));
+                }
+            }
+            if(!changed.isEmpty()){
+                removeIfScore(changed, follower -> getShardKey(entityType, entityId, follower.getValue()));
+            }
+        }
+        if(total > 0){
+            logger.info(String.format("[任务完成] 已迁移粉丝：%d:%d，%d个", entityType, entityId, total));
+        }
+    }
+
+    // 通过管道逐个执行REMOVE_IF_SCORE，结果和followers一一对应
+    private List<Object> removeIfScore(List<ZSetOperations.TypedTuple<Integer>> followers,
+                                       Function<ZSetOperations.TypedTuple<Integer>, String> keyOf){
+        return redisTemplate.executePipelined(new SessionCallback() {
+            @Override
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                for(ZSetOperations.TypedTuple<Integer> follower : followers){
+                    // 关注时间是毫秒数，按整数传入脚本
+                    operations.execute(REMOVE_IF_SCORE, Collections.singletonList(keyOf.apply(follower)),
+                            follower.getValue(), follower.getScore().longValue());
+                }
+                return null;
+            }
+        });
     }
 
     // 查询当前用户是否已关注该实体
     public boolean hasFollowed(int userId, int entityType, int entityId){
         String followeeKey = RedisKeyUtil.getFolloweeKey(userId, entityType);
-        return redisTemplate.opsForZSet().score(followeeKey, entityId) != null;
+        return requestCacheHolder.get("status:" + followeeKey + ":" + entityId,
+                () -> redisTemplate.opsForZSet().score(followeeKey, entityId) != null);
     }
 
-    // 查询某用户关注的人
-    public List<Map<String, Object>> findFollowees(int userId, int offset, int limit){
-        String followeeKey = RedisKeyUtil.getFolloweeKey(userId, ENTITY_TYPE_USER);
-        Set<Integer> targetIds = redisTemplate.opsForZSet().reverseRange(followeeKey, offset, offset + limit - 1);
+    // 关注状态变化时，清除本次请求中缓存的数量和状态
+    private void evictRequestCache(int userId, int entityType, int entityId){
+        String followeeKey = RedisKeyUtil.getFolloweeKey(userId, entityType);
+        requestCacheHolder.evict("count:" + followeeKey);
+        requestCacheHolder.evict("count:" + RedisKeyUtil.getFollowerKey(entityType, entityId));
+        requestCacheHolder.evict("status:" + followeeKey + ":" + entityId);
+    }
 
-        if(targetIds == null){
-            return null;
+    // 批量查询当前用户是否已关注这些实体，所有的ZSCORE通过管道一次发送
+    public Map<Integer, Boolean> hasFollowed(int userId, int entityType, List<Integer> entityIds){
+        Map<Integer, Boolean> statuses = new HashMap<>();
+        if(entityIds == null || entityIds.isEmpty()){
+            return statuses;
         }
 
-        List<Map<String, Object>> list = new ArrayList<>();
-        for(Integer targetId : targetIds){
-            Map<String, Object> map = new HashMap<>();
-            User user = userService.findUserById(targetId);
-            map.put("user", user);
-            Double score = redisTemplate.opsForZSet().score(followeeKey, targetId);
-            map.put("followTime", new Date(score.longValue()));
-            list.add(map);
+        String followeeKey = RedisKeyUtil.getFolloweeKey(userId, entityType);
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback() {
+            @Override
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                for(Integer entityId : entityIds){
+                    operations.opsForZSet().score(followeeKey, entityId);
+                }
+                return null;
+            }
+        });
+
+        for(int i = 0; i < entityIds.size(); i++){
+            boolean followed = results.get(i) != null;
+            statuses.put(entityIds.get(i), followed);
+            requestCacheHolder.put("status:" + followeeKey + ":" + entityIds.get(i), followed);
         }
+        return statuses;
+    }
 
-        return list;
+    // 查询某用户关注的人
+    public List<Map<String, Object>> findFollowees(int userId, int offset, int limit){
+        String followeeKey = RedisKeyUtil.getFolloweeKey(userId, ENTITY_TYPE_USER);
+        Set<ZSetOperations.TypedTuple<Integer>> tuples =
+                redisTemplate.opsForZSet().reverseRangeWithScores(followeeKey, offset, offset + limit - 1);
+        return tuples == null ? null : findUsers(tuples);
     }
 
     // 查询某用户的粉丝
     public List<Map<String, Object>> findFollowers(int userId, int offset, int limit){
-        String followerKey = RedisKeyUtil.getFollowerKey(ENTITY_TYPE_USER, userId);
-        Set<Integer> targetIds = redisTemplate.opsForZSet().reverseRange(followerKey, offset, offset + limit - 1);
+        return findUsers(rangeFollowers(ENTITY_TYPE_USER, userId, offset, limit));
+    }
 
-        if(targetIds == null){
-            return null;
+    // 用一次ZREVRANGE WITHSCORES取出的一页ID和关注时间，再批量查询用户，往返次数和每页的数量无关
+    private List<Map<String, Object>> findUsers(Collection<ZSetOperations.TypedTuple<Integer>> tuples){
+        List<Integer> targetIds = new ArrayList<>(tuples.size());
+        for(ZSetOperations.TypedTuple<Integer> tuple : tuples){
+            targetIds.add(tuple.getValue());
         }
+        Map<Integer, User> users = userService.findUsersByIds(targetIds);
 
         List<Map<String, Object>> list = new ArrayList<>();
-        for(Integer targetId : targetIds){
+        for(ZSetOperations.TypedTuple<Integer> tuple : tuples){
+            User user = users.get(tuple.getValue());
+            if(user == null){
+                continue;
+            }
             Map<String, Object> map = new HashMap<>();
-            User user = userService.findUserById(targetId);
             map.put("user", user);
-            Double score = redisTemplate.opsForZSet().score(followerKey, targetId);
-            map.put("followTime", new Date(score.longValue()));
+            map.put("followTime", new Date(tuple.getScore().longValue()));
             list.add(map);
         }
 
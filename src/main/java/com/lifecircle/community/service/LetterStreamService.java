@@ -0,0 +1,212 @@
+package com.lifecircle.community.service;
+
+import com.lifecircle.community.entity.Message;
+import com.lifecircle.community.util.RedisKeyUtil;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 私信的实时推送(Server-Sent Events)
+ * 每个节点只保存连接在本节点的用户的SseEmitter，事务提交后把事件发布到Redis频道，所有节点收到后推送给各自的连接；
+ * 定时发送心跳，发送失败的连接和长时间没有事件的连接被移除，浏览器会自动重新连接
+ */
+@Service
+public class LetterStreamService {
+
+    private static final Logger logger = LoggerFactory.getLogger(LetterStreamService.class);
+
+    public static final String EVENT_LETTER = "letter";
+
+    public static final String EVENT_UNREAD = "unread";
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Autowired
+    private LetterUnreadService letterUnreadService;
+
+    // 没有事件的连接保持的时间(毫秒)
+    @Value("${community.letter.stream.idle-timeout:600000}")
+    private long idleTimeout;
+
+    // 每个用户在一个节点上最多保持的连接数量(多个标签页)
+    @Value("${community.letter.stream.max-connections:5}")
+    private int maxConnections;
+
+    // 连接在本节点的用户，key为userId
+    private final Map<Integer, List<Connection>> connections = new ConcurrentHashMap<>();
+
+    private static class Connection {
+
+        private final SseEmitter emitter;
+
+        // 最近一次推送事件的时间，心跳不算
+        private volatile long lastEventTime = System.currentTimeMillis();
+
+        private Connection(SseEmitter emitter) {
+            this.emitter = emitter;
+        }
+    }
+
+    @PostConstruct
+    public void init(){
+        redisMessageListenerContainer.addMessageListener((message, pattern) -> {
+            Object event = redisTemplate.getValueSerializer().deserialize(message.getBody());
+            if(event instanceof Map){
+                Map<?, ?> map = (Map<?, ?>) event;
+                deliver(((Number) map.get("userId")).intValue(), (String) map.get("event"), map.get("data"));
+            }
+        }, new ChannelTopic(RedisKeyUtil.getLetterChannel()));
+    }
+
+    // 建立连接，连接建立后先推送一次当前的未读数量
+    public SseEmitter subscribe(int userId){
+        // 超时时间比空闲时间稍长，由定时任务统一回收空闲的连接
+        SseEmitter emitter = new SseEmitter(idleTimeout + 60000);
+        Connection connection = new Connection(emitter);
+
+        List<Connection> evicted = new ArrayList<>();
+        connections.compute(userId, (k, list) -> {
+            if(list == null){
+                list = new CopyOnWriteArrayList<>();
+            }
+            list.add(connection);
+            while(list.size() > maxConnections){
+                evicted.add(list.remove(0));
+            }
+            return list;
+        });
+        for(Connection oldest : evicted){
+            oldest.emitter.complete();
+        }
+
+        emitter.onCompletion(() -> remove(userId, connection));
+        emitter.onTimeout(() -> remove(userId, connection));
+        emitter.onError(e -> remove(userId, connection));
+
+        Map<String, Object> data = new HashMap<>();
+        data.put("unreadCount", letterUnreadService.findUnreadCount(userId));
+        send(userId, connection, EVENT_UNREAD, data);
+        return emitter;
+    }
+
+    private void remove(int userId, Connection connection){
+        connections.computeIfPresent(userId, (k, list) -> {
+            list.remove(connection);
+            return list.isEmpty() ? null : list;
+        });
+    }
+
+    // 新私信：推送私信和接收者的未读数量
+    public void publishLetter(Message message){
+        Map<String, Object> data = new HashMap<>();
+        data.put("id", message.getId());
+        data.put("fromId", message.getFromId());
+        data.put("conversationId", message.getConversationId());
+        data.put("content", message.getContent());
+        data.put("createTime", message.getCreateTime().getTime());
+        afterCommit(() -> {
+            publish(message.getToId(), EVENT_LETTER, data);
+            publishUnread(message.getToId());
+        });
+    }
+
+    // 未读数量发生变化(比如在另一个标签页中读了私信)
+    public void publishUnreadAfterCommit(int userId){
+        afterCommit(() -> publishUnread(userId));
+    }
+
+    private void publishUnread(int userId){
+        Map<String, Object> data = new HashMap<>();
+        data.put("unreadCount", letterUnreadService.findUnreadCount(userId));
+        publish(userId, EVENT_UNREAD, data);
+    }
+
+    private void publish(int userId, String event, Map<String, Object> data){
+        Map<String, Object> map = new HashMap<>();
+        map.put("userId", userId);
+        map.put("event", event);
+        map.put("data", data);
+        try{
+            redisTemplate.convertAndSend(RedisKeyUtil.getLetterChannel(), map);
+        }catch(Exception e){
+            logger.error("发布私信事件失败：" + e.getMessage());
+        }
+    }
+
+    // 在事务中调用时等到提交之后再执行，之前注册的未读数量更新会先执行
+    private void afterCommit(Runnable task){
+        if(TransactionSynchronizationManager.isSynchronizationActive()){
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    task.run();
+                }
+            });
+        }else{
+            task.run();
+        }
+    }
+
+    // 推送给连接在本节点的用户
+    private void deliver(int userId, String event, Object data){
+        List<Connection> list = connections.get(userId);
+        if(list == null){
+            return;
+        }
+        for(Connection connection : list){
+            send(userId, connection, event, data);
+        }
+    }
+
+    private void send(int userId, Connection connection, String event, Object data){
+        try{
+            connection.emitter.send(SseEmitter.event().name(event).data(data, MediaType.APPLICATION_JSON));
+            connection.lastEventTime = System.currentTimeMillis();
+        }catch(Exception e){
+            remove(userId, connection);
+            connection.emitter.completeWithError(e);
+        }
+    }
+
+    // 定时发送心跳并回收空闲的连接
+    @Scheduled(fixedDelayString = "${community.letter.stream.heartbeat-interval:15000}")
+    public void heartbeat(){
+        long now = System.currentTimeMillis();
+        for(Map.Entry<Integer, List<Connection>> entry : connections.entrySet()){
+            for(Connection connection : entry.getValue()){
+                if(now - connection.lastEventTime > idleTimeout){
+                    remove(entry.getKey(), connection);
+                    connection.emitter.complete();
+                    continue;
+                }
+                try{
+                    connection.emitter.send(SseEmitter.event().comment("ping"));
+                }catch(Exception e){
+                    remove(entry.getKey(), connection);
+                    connection.emitter.completeWithError(e);
+                }
+            }
+        }
+    }
+
+}
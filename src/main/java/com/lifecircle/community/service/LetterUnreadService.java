@@ -0,0 +1,209 @@
+package com.lifecircle.community.service;
+
+import com.lifecircle.community.dao.ConversationMapper;
+import com.lifecircle.community.entity.Conversation;
+import com.lifecircle.community.util.RedisKeyUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.*;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.*;
+
+/**
+ * 未读私信数量
+ * 每个用户的未读数量保存在Redis的哈希中，一次HGETALL就能得到所有会话的未读数量，HGET total得到总数；
+ * 发送和读取私信的事务提交后增减计数，哈希不存在时从会话摘要表初始化，定时任务校对，和数据库不一致时删除，下次读取时重建
+ */
+@Service
+public class LetterUnreadService {
+
+    private static final Logger logger = LoggerFactory.getLogger(LetterUnreadService.class);
+
+    public static final String FIELD_TOTAL = "total";
+
+    private static final String KEY_PREFIX = "letter:unread:";
+
+    // 只在哈希已经初始化时增减，计数出现负数说明已经不准确，删除后重建
+    private static final RedisScript<Long> INCREASE = new DefaultRedisScript<>(
+            "if redis.call('exists', KEYS[1]) == 0 then return 0 end " +
+            "local count = redis.call('hincrby', KEYS[1], ARGV[1], ARGV[2]) " +
+            "local total = redis.call('hincrby', KEYS[1], 'total', ARGV[2]) " +
+            "if count < 0 or total < 0 then redis.call('del', KEYS[1]) return 0 end " +
+            "if count == 0 then redis.call('hdel', KEYS[1], ARGV[1]) end " +
+            "return 1",
+            Long.class);
+
+    // 哈希不存在时才写入，ARGV[1]为过期时间，之后依次为字段和值
+    private static final RedisScript<Long> INIT = new DefaultRedisScript<>(
+            "if redis.call('exists', KEYS[1]) == 1 then return 0 end " +
+            "for i = 2, #ARGV, 2 do redis.call('hset', KEYS[1], ARGV[i], ARGV[i + 1]) end " +
+            "redis.call('expire', KEYS[1], ARGV[1]) " +
+            "return 1",
+            Long.class);
+
+    @Autowired
+    private ConversationMapper conversationMapper;
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+
+    // 哈希的过期时间，不活跃用户的计数过期后从数据库重建
+    @Value("${community.letter.unread.expire-seconds:604800}")
+    private int expireSeconds;
+
+    // 每批校对的用户数量
+    @Value("${community.letter.unread.batch-size:100}")
+    private int batchSize;
+
+    // 查询某用户每个会话的未读数量，total为总数
+    public Map<String, Integer> findUnreadCounts(int userId){
+        Map<Object, Object> entries = redisTemplate.opsForHash().entries(RedisKeyUtil.getLetterUnreadKey(userId));
+        if(entries != null && !entries.isEmpty()){
+            Map<String, Integer> counts = new HashMap<>();
+            for(Map.Entry<Object, Object> entry : entries.entrySet()){
+                counts.put(entry.getKey().toString(), ((Number) entry.getValue()).intValue());
+            }
+            return counts;
+        }
+        return initCounts(userId);
+    }
+
+    // 查询某用户的未读私信总数，每个页面的导航栏都会用到
+    public int findUnreadCount(int userId){
+        Object total = redisTemplate.opsForHash().get(RedisKeyUtil.getLetterUnreadKey(userId), FIELD_TOTAL);
+        if(total != null){
+            return ((Number) total).intValue();
+        }
+        return initCounts(userId).getOrDefault(FIELD_TOTAL, 0);
+    }
+
+    // 增减某个会话的未读数量，在事务中调用时等到提交之后再执行
+    public void increase(int userId, String conversationId, int delta){
+        if(TransactionSynchronizationManager.isSynchronizationActive()){
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    doIncrease(userId, conversationId, delta);
+                }
+            });
+        }else{
+            doIncrease(userId, conversationId, delta);
+        }
+    }
+
+    private void doIncrease(int userId, String conversationId, int delta){
+        try{
+            redisTemplate.execute(INCREASE, RedisSerializer.string(), redisTemplate.getValueSerializer(),
+                    Collections.singletonList(RedisKeyUtil.getLetterUnreadKey(userId)),
+                    conversationId, String.valueOf(delta));
+        }catch(Exception e){
+            // 没有更新的计数由校对任务修正
+            logger.error("更新未读私信数量失败：" + e.getMessage());
+        }
+    }
+
+    // 从会话摘要表统计未读数量并写入Redis
+    // 统计之后、写入之前提交的私信不会被计入，这种偏差由校对任务修正
+    private Map<String, Integer> initCounts(int userId){
+        Map<String, Integer> counts = loadCounts(Collections.singletonList(userId)).get(userId);
+
+        List<String> args = new ArrayList<>(counts.size() * 2 + 1);
+        args.add(String.valueOf(expireSeconds));
+        for(Map.Entry<String, Integer> entry : counts.entrySet()){
+            args.add(entry.getKey());
+            args.add(String.valueOf(entry.getValue()));
+        }
+        try{
+            redisTemplate.execute(INIT, RedisSerializer.string(), redisTemplate.getValueSerializer(),
+                    Collections.singletonList(RedisKeyUtil.getLetterUnreadKey(userId)), args.toArray());
+        }catch(Exception e){
+            logger.error("初始化未读私信数量失败：" + e.getMessage());
+        }
+        return counts;
+    }
+
+    // 从会话摘要表统计一批用户的未读数量，每个用户都有total
+    private Map<Integer, Map<String, Integer>> loadCounts(List<Integer> userIds){
+        Map<Integer, Map<String, Integer>> result = new HashMap<>();
+        for(Integer userId : userIds){
+            Map<String, Integer> counts = new HashMap<>();
+            counts.put(FIELD_TOTAL, 0);
+            result.put(userId, counts);
+        }
+        for(Conversation conversation : conversationMapper.selectUnreadConversations(userIds)){
+            Map<String, Integer> counts = result.get(conversation.getUserId());
+            counts.put(conversation.getConversationId(), conversation.getUnreadCount());
+            counts.merge(FIELD_TOTAL, conversation.getUnreadCount(), Integer::sum);
+        }
+        return result;
+    }
+
+    // 定时校对Redis中的未读数量，不一致的直接删除
+    @Scheduled(fixedDelayString = "${community.letter.unread.reconcile-interval:600000}")
+    public void reconcile(){
+        ScanOptions options = ScanOptions.scanOptions().match(KEY_PREFIX + "*").count(batchSize).build();
+
+        int repaired = 0;
+        List<Integer> batch = new ArrayList<>(batchSize);
+        try(Cursor<Object> cursor = redisTemplate.scan(options)){
+            while(cursor.hasNext()){
+                batch.add(Integer.parseInt(cursor.next().toString().substring(KEY_PREFIX.length())));
+                if(batch.size() == batchSize){
+                    repaired += reconcile(batch);
+                    batch = new ArrayList<>(batchSize);
+                }
+            }
+            if(!batch.isEmpty()){
+                repaired += reconcile(batch);
+            }
+        }catch(Exception e){
+            logger.error("校对未读私信数量失败：" + e.getMessage());
+        }
+        if(repaired > 0){
+            logger.info(String.format("[任务完成] 已修正未读私信数量：%d", repaired));
+        }
+    }
+
+    private int reconcile(List<Integer> userIds){
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback() {
+            @Override
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                for(Integer userId : userIds){
+                    operations.opsForHash().entries(RedisKeyUtil.getLetterUnreadKey(userId));
+                }
+                return null;
+            }
+        });
+        Map<Integer, Map<String, Integer>> expected = loadCounts(userIds);
+
+        List<String> drifted = new ArrayList<>();
+        for(int i = 0; i < userIds.size(); i++){
+            Map<?, ?> entries = (Map<?, ?>) results.get(i);
+            if(entries == null || entries.isEmpty()){
+                continue;
+            }
+            Map<String, Integer> actual = new HashMap<>();
+            for(Map.Entry<?, ?> entry : entries.entrySet()){
+                actual.put(entry.getKey().toString(), ((Number) entry.getValue()).intValue());
+            }
+            if(!actual.equals(expected.get(userIds.get(i)))){
+                drifted.add(RedisKeyUtil.getLetterUnreadKey(userIds.get(i)));
+            }
+        }
+        if(!drifted.isEmpty()){
+            redisTemplate.delete(drifted);
+        }
+        return drifted.size();
+    }
+
+}
@@ -0,0 +1,270 @@
+package com.lifecircle.community.service;
+
+import com.lifecircle.community.dao.LikeCountMapper;
+import com.lifecircle.community.entity.LikeCount;
+import com.lifecircle.community.util.CommunityConstant;
+import com.lifecircle.community.util.RedisKeyUtil;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 点赞数量
+ * Redis中为每个实体维护一个点赞计数，读取时不再对点赞集合做SCARD；
+ * 点赞和取消点赞只在内存中标记发生变化的计数，定时任务把这些计数批量写入MySQL的like_count表(write-behind)，
+ * Redis中的计数丢失后(比如重启)，从like_count表重建
+ */
+@Service
+public class LikeCountService implements CommunityConstant {
+
+    private static final Logger logger = LoggerFactory.getLogger(LikeCountService.class);
+
+    @Autowired
+    private LikeCountMapper likeCountMapper;
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+
+    @Autowired
+    private LikeStorage likeStorage;
+
+    // 每批写入或重建的行数
+    @Value("${community.like.count.batch-size:500}")
+    private int batchSize;
+
+    // 上次写入之后发生过变化的计数，元素为entityType和entityId拼成的long
+    // 始终是同一个集合，写入时逐个取出并删除，不会丢失取出过程中新增的标记
+    private final Set<Long> dirty = ConcurrentHashMap.newKeySet();
+
+    // 计数在Redis中的key，用户获得的赞沿用原来的like:user:userId
+    public static String getCountKey(int entityType, int entityId){
+        return entityType == ENTITY_TYPE_USER
+                ? RedisKeyUtil.getUserLikeKey(entityId)
+                : RedisKeyUtil.getEntityLikeCountKey(entityType, entityId);
+    }
+
+    // 查询点赞数量，计数不存在时先初始化
+    public long findCount(int entityType, int entityId){
+        Object count = redisTemplate.opsForValue().get(getCountKey(entityType, entityId));
+        if(count != null){
+            return ((Number) count).longValue();
+        }
+        return initCount(entityType, entityId);
+    }
+
+    // 批量查询点赞数量，用一次MGET取值
+    public Map<Integer, Long> findCounts(int entityType, List<Integer> entityIds){
+        Map<Integer, Long> counts = new HashMap<>();
+        if(entityIds == null || entityIds.isEmpty()){
+            return counts;
+        }
+
+        List<String> redisKeys = new ArrayList<>(entityIds.size());
+        for(Integer entityId : entityIds){
+            redisKeys.add(getCountKey(entityType, entityId));
+        }
+        List<Object> values = redisTemplate.opsForValue().multiGet(redisKeys);
+        List<Integer> missing = new ArrayList<>();
+        for(int i = 0; i < entityIds.size(); i++){
+            Object value = values == null ? null : values.get(i);
+            if(value != null){
+                counts.put(entityIds.get(i), ((Number) value).longValue());
+            }else{
+                missing.add(entityIds.get(i));
+            }
+        }
+        // 缺失的计数一起初始化
+        if(!missing.isEmpty()){
+            counts.putAll(initCounts(entityType, missing));
+        }
+        return counts;
+    }
+
+    // 确保计数存在，点赞时在事务之外调用，事务中的INCR/DECR才不会从0开始计数
+    public void ensureCount(int entityType, int entityId){
+        if(!Boolean.TRUE.equals(redisTemplate.hasKey(getCountKey(entityType, entityId)))){
+            initCount(entityType, entityId);
+        }
+    }
+
+    // 计数发生了变化，等待写入数据库
+    public void markDirty(int entityType, int entityId){
+        dirty.add(((long) entityType << 32) | (entityId & 0xFFFFFFFFL));
+    }
+
+    private long initCount(int entityType, int entityId){
+        return initCounts(entityType, Collections.singletonList(entityId)).get(entityId);
+    }
+
+    // 批量初始化计数：优先取数据库中的副本(一次IN查询)，没有副本时由点赞关系统计(升级前已有的数据)
+    // 用管道中的SETNX写入，不会覆盖其他节点同时写入的值，没有写入成功的计数再用一次MGET读取
+    private Map<Integer, Long> initCounts(int entityType, List<Integer> entityIds){
+        Map<Integer, Long> counts = new HashMap<>();
+        for(LikeCount likeCount : likeCountMapper.selectLikeCountsByIds(entityType, entityIds)){
+            counts.put(likeCount.getEntityId(), likeCount.getLikeCount());
+        }
+        List<Integer> uncounted = new ArrayList<>();
+        for(Integer entityId : entityIds){
+            if(!counts.containsKey(entityId)){
+                if(entityType == ENTITY_TYPE_USER){
+                    counts.put(entityId, 0L);
+                }else{
+                    uncounted.add(entityId);
+                }
+            }
+        }
+        if(!uncounted.isEmpty()){
+            List<Long> cardinalities = likeStorage.cardinalities(entityType, uncounted);
+            for(int i = 0; i < uncounted.size(); i++){
+                long count = cardinalities.get(i);
+                counts.put(uncounted.get(i), count);
+                if(count > 0){
+                    markDirty(entityType, uncounted.get(i));
+                }
+            }
+        }
+
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback() {
+            @Override
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                for(Integer entityId : entityIds){
+                    operations.opsForValue().setIfAbsent(getCountKey(entityType, entityId), counts.get(entityId).intValue());
+                }
+                return null;
+            }
+        });
+        List<Integer> lost = new ArrayList<>();
+        List<String> lostKeys = new ArrayList<>();
+        for(int i = 0; i < entityIds.size(); i++){
+            if(!Boolean.TRUE.equals(results.get(i))){
+                lost.add(entityIds.get(i));
+                lostKeys.add(getCountKey(entityType, entityIds.get(i)));
+            }
+        }
+        if(!lost.isEmpty()){
+            List<Object> values = redisTemplate.opsForValue().multiGet(lostKeys);
+            for(int i = 0; i < lost.size(); i++){
+                Object value = values == null ? null : values.get(i);
+                if(value != null){
+                    counts.put(lost.get(i), ((Number) value).longValue());
+                }
+            }
+        }
+        return counts;
+    }
+
+    // 定时把发生过变化的计数写入数据库
+    @Scheduled(fixedDelayString = "${community.like.count.flush-interval:10000}")
+    public void flush(){
+        if(dirty.isEmpty()){
+            return;
+        }
+
+        // 先从集合中删除再读取Redis中的值，删除之后的点赞会重新标记，删除之前的点赞已经反映在读到的值中
+        List<Long> batch = new ArrayList<>(batchSize);
+        Iterator<Long> iterator = dirty.iterator();
+        while(iterator.hasNext()){
+            Long key = iterator.next();
+            iterator.remove();
+            batch.add(key);
+            if(batch.size() == batchSize){
+                flush(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if(!batch.isEmpty()){
+            flush(batch);
+        }
+    }
+
+    private void flush(List<Long> batch){
+        try{
+            List<String> redisKeys = new ArrayList<>(batch.size());
+            for(Long key : batch){
+                redisKeys.add(getCountKey((int) (key >>> 32), key.intValue()));
+            }
+            // 写入的是Redis中的当前值，而不是增量，重复写入或者多个节点同时写入都不会多算
+            List<Object> values = redisTemplate.opsForValue().multiGet(redisKeys);
+            List<LikeCount> likeCounts = new ArrayList<>(batch.size());
+            for(int i = 0; i < batch.size(); i++){
+                Object value = values == null ? null : values.get(i);
+                if(value != null){
+                    long key = batch.get(i);
+                    likeCounts.add(new LikeCount((int) (key >>> 32), (int) key, ((Number) value).longValue()));
+                }
+            }
+            if(!likeCounts.isEmpty()){
+                likeCountMapper.upsertLikeCounts(likeCounts);
+            }
+        }catch(Exception e){
+            // 写入失败时重新标记，下次再写
+            dirty.addAll(batch);
+            logger.error("写入点赞数量失败：" + e.getMessage());
+        }
+    }
+
+    // 停机前写入最后一批计数
+    @PreDestroy
+    public void destroy(){
+        flush();
+    }
+
+    // 启动后用数据库中的副本补齐Redis中缺失的计数，已存在的计数不会被覆盖
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void rebuild(){
+        int entityType = 0;
+        int entityId = 0;
+        int total = 0;
+        try{
+            while(true){
+                List<LikeCount> likeCounts = likeCountMapper.selectLikeCountsAfter(entityType, entityId, batchSize);
+                if(likeCounts.isEmpty()){
+                    break;
+                }
+                List<Object> results = redisTemplate.executePipelined(new SessionCallback() {
+                    @Override
+                    public Object execute(RedisOperations operations) throws DataAccessException {
+                        for(LikeCount likeCount : likeCounts){
+                            String countKey = getCountKey(likeCount.getEntityType(), likeCount.getEntityId());
+                            operations.opsForValue().setIfAbsent(countKey, (int) likeCount.getLikeCount());
+                        }
+                        return null;
+                    }
+                });
+                for(Object result : results){
+                    if(Boolean.TRUE.equals(result)){
+                        total++;
+                    }
+                }
+
+                LikeCount last = likeCounts.get(likeCounts.size() - 1);
+                entityType = last.getEntityType();
+                entityId = last.getEntityId();
+                if(likeCounts.size() < batchSize){
+                    break;
+                }
+            }
+        }catch(Exception e){
+            logger.error("重建点赞数量失败：" + e.getMessage());
+        }
+        if(total > 0){
+            logger.info(String.format("[任务完成] 已从数据库恢复点赞数量：%d", total));
+        }
+    }
+
+}
@@ -1,63 +1,167 @@
 package com.lifecircle.community.service;
 
-import com.lifecircle.community.util.HostHolder;
+import com.lifecircle.community.entity.Event;
+import com.lifecircle.community.event.EventProducer;
+import com.lifecircle.community.util.CommunityConstant;
 import com.lifecircle.community.util.RedisKeyUtil;
+import com.lifecircle.community.util.RequestCacheHolder;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.dao.DataAccessException;
-import org.springframework.data.redis.core.RedisOperations;
-import org.springframework.data.redis.core.RedisTemplate;
-import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 @Service
-public class LikeService {
+public class LikeService implements CommunityConstant {
+
+    @Autowired
+    private LikeStorage likeStorage;
+
+    @Autowired
+    private RequestCacheHolder requestCacheHolder;
+
+    @Autowired
+    private LikeCountService likeCountService;
 
     @Autowired
-    private RedisTemplate redisTemplate;
-
-    // 点赞
-    public void like(int userId, int entityType, int entityId, int entityUserId){
-        redisTemplate.execute(new SessionCallback() {
-            @Override
-            public Object execute(RedisOperations operations) throws DataAccessException {
-                String entityLikeKey = RedisKeyUtil.getEntityLikeKey(entityType, entityId);
-                String userLikeKey = RedisKeyUtil.getUserLikeKey(entityUserId);
-
-                boolean isMember = operations.opsForSet().isMember(entityLikeKey, userId);
-
-                // 执行事务
-                operations.multi();
-
-                if(isMember){
-                    operations.opsForSet().remove(entityLikeKey, userId);
-                    operations.opsForValue().decrement(userLikeKey);
-                }else{
-                    operations.opsForSet().add(entityLikeKey, userId);
-                    operations.opsForValue().increment(userLikeKey);
-                }
-
-                return operations.exec();
+    private EventProducer eventProducer;
+
+    // 点赞，返回点赞之后的数量(likeCount)和状态(likeStatus)
+    public Map<String, Object> like(int userId, int entityType, int entityId, int entityUserId){
+        // 判断状态、修改点赞关系和计数在一次网络往返中完成，计数不存在时初始化后重试
+        List<Long> result = likeStorage.toggle(userId, entityType, entityId, entityUserId);
+        if(isMissingCount(result)){
+            likeCountService.ensureCount(entityType, entityId);
+            likeCountService.ensureCount(ENTITY_TYPE_USER, entityUserId);
+            result = likeStorage.toggle(userId, entityType, entityId, entityUserId);
+            if(isMissingCount(result)){
+                throw new IllegalStateException("点赞计数初始化失败！");
             }
-        });
+        }
+
+        // 计数稍后批量写入数据库
+        likeCountService.markDirty(entityType, entityId);
+        likeCountService.markDirty(ENTITY_TYPE_USER, entityUserId);
+
+        long likeCount = result.get(0);
+        int likeStatus = result.get(1).intValue();
+        requestCacheHolder.put(countCacheKey(entityType, entityId), likeCount);
+        requestCacheHolder.put(statusCacheKey(userId, entityType, entityId), likeStatus);
+        requestCacheHolder.evict(userCountCacheKey(entityUserId));
+
+        // 点赞时通知实体的作者，取消点赞不通知
+        if(likeStatus == 1){
+            Event event = new Event()
+                    .setTopic(TOPIC_LIKE)
+                    .setUserId(userId)
+                    .setEntityType(entityType)
+                    .setEntityId(entityId)
+                    .setEntityUserId(entityUserId);
+            eventProducer.fireEvent(event);
+        }
+
+        Map<String, Object> map = new HashMap<>();
+        map.put("likeCount", likeCount);
+        map.put("likeStatus", likeStatus);
+        return map;
     }
 
     // 查询某实体点赞的数量
     public long findEntityLikeCount(int entityType, int entityId){
-        String entityLikeKey = RedisKeyUtil.getEntityLikeKey(entityType, entityId);
-        return redisTemplate.opsForSet().size(entityLikeKey);
+        return requestCacheHolder.get(countCacheKey(entityType, entityId),
+                () -> likeCountService.findCount(entityType, entityId));
+    }
+
+    // 批量查询实体点赞的数量，所有的计数通过一次MGET取回
+    public Map<Integer, Long> findEntityLikeCounts(int entityType, List<Integer> entityIds){
+        Map<Integer, Long> likeCounts = new HashMap<>();
+        if(entityIds == null || entityIds.isEmpty()){
+            return likeCounts;
+        }
+
+        // 本次请求已经查过的实体不再查询
+        List<Integer> queryIds = new ArrayList<>();
+        for(Integer entityId : entityIds){
+            String cacheKey = countCacheKey(entityType, entityId);
+            if(requestCacheHolder.contains(cacheKey)){
+                likeCounts.put(entityId, requestCacheHolder.get(cacheKey));
+            }else{
+                queryIds.add(entityId);
+            }
+        }
+        if(queryIds.isEmpty()){
+            return likeCounts;
+        }
+
+        Map<Integer, Long> counts = likeCountService.findCounts(entityType, queryIds);
+        for(Integer entityId : queryIds){
+            long likeCount = counts.getOrDefault(entityId, 0L);
+            likeCounts.put(entityId, likeCount);
+            requestCacheHolder.put(countCacheKey(entityType, entityId), likeCount);
+        }
+        return likeCounts;
     }
 
     // 查询某人对某实体的点赞状态
     public int findEntityLikeStatus(int userId, int entityType, int entityId){
-        String entityLikeKey = RedisKeyUtil.getEntityLikeKey(entityType, entityId);
-        return redisTemplate.opsForSet().isMember(entityLikeKey, userId) ? 1 : 0;
+        return requestCacheHolder.get(statusCacheKey(userId, entityType, entityId),
+                () -> likeStorage.isMember(userId, entityType, entityId) ? 1 : 0);
+    }
+
+    // 批量查询某人对多个实体的点赞状态，所有的查询通过管道一次发送
+    public Map<Integer, Integer> findEntityLikeStatuses(int userId, int entityType, List<Integer> entityIds){
+        Map<Integer, Integer> likeStatuses = new HashMap<>();
+        if(entityIds == null || entityIds.isEmpty()){
+            return likeStatuses;
+        }
+
+        // 本次请求已经查过的实体不再查询
+        List<Integer> queryIds = new ArrayList<>();
+        for(Integer entityId : entityIds){
+            String cacheKey = statusCacheKey(userId, entityType, entityId);
+            if(requestCacheHolder.contains(cacheKey)){
+                likeStatuses.put(entityId, requestCacheHolder.get(cacheKey));
+            }else{
+                queryIds.add(entityId);
+            }
+        }
+        if(queryIds.isEmpty()){
+            return likeStatuses;
+        }
+
+        List<Boolean> results = likeStorage.isMembers(userId, entityType, queryIds);
+        for(int i = 0; i < queryIds.size(); i++){
+            int likeStatus = Boolean.TRUE.equals(results.get(i)) ? 1 : 0;
+            likeStatuses.put(queryIds.get(i), likeStatus);
+            requestCacheHolder.put(statusCacheKey(userId, entityType, queryIds.get(i)), likeStatus);
+        }
+        return likeStatuses;
     }
 
     // 查询某个用户获得的赞的总数
     public int findUserLikeCount(int userId){
-        String userLikeKey = RedisKeyUtil.getUserLikeKey(userId);
-        Integer count = (Integer) redisTemplate.opsForValue().get(userLikeKey);
-        return count == null ? 0 : count.intValue();
+        return requestCacheHolder.get(userCountCacheKey(userId),
+                () -> (int) likeCountService.findCount(ENTITY_TYPE_USER, userId));
+    }
+
+    // 计数不存在时脚本返回{-1, -1}
+    private static boolean isMissingCount(List<Long> result){
+        return result == null || result.size() < 2 || result.get(0) == null || result.get(0) < 0;
+    }
+
+    // 请求级别缓存的key
+    private static String countCacheKey(int entityType, int entityId){
+        return "count:" + RedisKeyUtil.getEntityLikeKey(entityType, entityId);
+    }
+
+    private static String statusCacheKey(int userId, int entityType, int entityId){
+        return "status:" + RedisKeyUtil.getEntityLikeKey(entityType, entityId) + ":" + userId;
+    }
+
+    private static String userCountCacheKey(int userId){
+        return "count:" + RedisKeyUtil.getUserLikeKey(userId);
     }
 
 }
@@ -0,0 +1,28 @@
+package com.lifecircle.community.service;
+
+import java.util.List;
+
+/**
+ * 点赞关系的存储方式，由community.like.storage选择：
+ * set(默认)：每个实体一个集合，成员为点赞用户的ID
+ * bitmap：每个实体一个位图，以用户ID为偏移量，点赞的用户对应的位为1
+ */
+public interface LikeStorage {
+
+    // 切换点赞状态，同时修改实体和用户的点赞计数，返回{点赞之后的数量, 状态}
+    // 任意一个计数不存在时不做修改，返回{-1, -1}(脚本返回nil时Lettuce得到的是只有一个null的列表，不是null)
+    List<Long> toggle(int userId, int entityType, int entityId, int entityUserId);
+
+    // 某人是否对某实体点过赞
+    boolean isMember(int userId, int entityType, int entityId);
+
+    // 批量查询某人对多个实体的点赞状态，结果和entityIds一一对应
+    List<Boolean> isMembers(int userId, int entityType, List<Integer> entityIds);
+
+    // 统计某实体的点赞数量，只在初始化计数时使用
+    long cardinality(int entityType, int entityId);
+
+    // 批量统计多个实体的点赞数量，结果和entityIds一一对应
+    List<Long> cardinalities(int entityType, List<Integer> entityIds);
+
+}
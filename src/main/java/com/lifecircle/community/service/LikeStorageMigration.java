@@ -0,0 +1,128 @@
+package com.lifecircle.community.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Component;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * 点赞关系的迁移：把集合存储(like:entity:*)转换成位图存储(like:bitmap:*)
+ * 设置community.like.migrate.enabled=true后在启动时执行，可以重复执行，每次都按集合的当前内容重建位图，
+ * 迁移过程中统计两种存储方式占用的内存，便于比较
+ */
+@Component
+public class LikeStorageMigration {
+
+    private static final Logger logger = LoggerFactory.getLogger(LikeStorageMigration.class);
+
+    private static final String SET_PREFIX = "like:entity:";
+
+    private static final String BITMAP_PREFIX = "like:bitmap:";
+
+    // 某个key占用的内存(字节)
+    private static final RedisScript<Long> MEMORY_USAGE = new DefaultRedisScript<>(
+            "return redis.call('memory', 'usage', KEYS[1]) or 0", Long.class);
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+
+    @Value("${community.like.migrate.enabled:false}")
+    private boolean enabled;
+
+    // 迁移完成后是否删除原来的集合
+    @Value("${community.like.migrate.delete-source:false}")
+    private boolean deleteSource;
+
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady(){
+        if(enabled){
+            migrate();
+        }
+    }
+
+    public void migrate(){
+        int keys = 0;
+        int failures = 0;
+        long setMemory = 0;
+        long bitmapMemory = 0;
+
+        ScanOptions options = ScanOptions.scanOptions().match(SET_PREFIX + "*").count(1000).build();
+        try(Cursor<Object> cursor = redisTemplate.scan(options)){
+            while(cursor.hasNext()){
+                String setKey = cursor.next().toString();
+                String bitmapKey = BITMAP_PREFIX + setKey.substring(SET_PREFIX.length());
+                // 单个实体失败时记录日志后跳过，不影响其他实体
+                try{
+                    Set<Object> members = redisTemplate.opsForSet().members(setKey);
+                    if(members == null || members.isEmpty()){
+                        // 集合已经为空，清除之前迁移过的位图
+                        redisTemplate.delete(bitmapKey);
+                        continue;
+                    }
+                    setMemory += memoryUsage(setKey);
+                    rebuild(bitmapKey, members);
+                    bitmapMemory += memoryUsage(bitmapKey);
+
+                    if(deleteSource){
+                        redisTemplate.delete(setKey);
+                    }
+                    keys++;
+                }catch(Exception e){
+                    failures++;
+                    logger.error("迁移点赞数据失败，跳过" + setKey + "：" + e.getMessage());
+                }
+            }
+        }catch(Exception e){
+            logger.error("迁移点赞数据失败：" + e.getMessage());
+        }
+
+        logger.info(String.format("[任务完成] 已迁移点赞数据：%d个实体，失败%d个，集合占用%d字节，位图占用%d字节",
+                keys, failures, setMemory, bitmapMemory));
+    }
+
+    // 在临时key中生成完整的位图，再用RENAME整体替换，重复执行时已取消的点赞对应的位也会被清除，
+    // 生成过程中失败不会留下只有一部分位的位图
+    // 临时key以位图的key作为hash tag，在集群中和位图位于同一个槽，RENAME不会跨槽
+    private void rebuild(String bitmapKey, Set<Object> members){
+        String tempKey = "{" + bitmapKey + "}:migrating";
+        try{
+            // 一个实体的所有SETBIT通过管道一次发送
+            redisTemplate.executePipelined(new SessionCallback() {
+                @Override
+                public Object execute(RedisOperations operations) throws DataAccessException {
+                    operations.delete(tempKey);
+                    for(Object userId : members){
+                        operations.opsForValue().setBit(tempKey, ((Number) userId).longValue(), true);
+                    }
+                    return null;
+                }
+            });
+            redisTemplate.rename(tempKey, bitmapKey);
+        }catch(Exception e){
+            redisTemplate.delete(tempKey);
+            throw e;
+        }
+    }
+
+    private long memoryUsage(String key){
+        Long usage = (Long) redisTemplate.execute(MEMORY_USAGE, Collections.singletonList(key));
+        return usage == null ? 0 : usage;
+    }
+
+}
@@ -0,0 +1,192 @@
+package com.lifecircle.community.service;
+
+import com.lifecircle.community.dao.MessageMapper;
+import com.lifecircle.community.entity.Message;
+import com.lifecircle.community.util.CommunityConstant;
+import com.lifecircle.community.util.RedisKeyUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+
+/**
+ * 私信归档
+ * message表只保留最近几个月的私信，定时任务从上次的水位开始按主键顺序扫描，把更早的已读私信分批移到按月分区的message_archive表，
+ * 未读的私信和同一个会话中在它之后的私信都留在message表中，设置已读和统计未读数量都不需要查询归档表，
+ * 按会话分页时先查message表再接着查归档表，顺序不会错乱；每次归档前先创建缺少的月份分区
+ * 系统通知不归档，超过保留期的已读通知直接删除
+ */
+@Service
+public class MessageArchiveService implements CommunityConstant {
+
+    private static final Logger logger = LoggerFactory.getLogger(MessageArchiveService.class);
+
+    private static final DateTimeFormatter PARTITION_FORMAT = DateTimeFormatter.ofPattern("yyyyMMdd");
+
+    @Autowired
+    private MessageMapper messageMapper;
+
+    @Autowired
+    private MessageService messageService;
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+
+    // message表保留的月数
+    @Value("${community.letter.archive.months:6}")
+    private int months;
+
+    // 已读系统通知保留的月数
+    @Value("${community.notice.retention-months:6}")
+    private int noticeRetentionMonths;
+
+    // 每批扫描的消息数量
+    @Value("${community.letter.archive.batch-size:500}")
+    private int batchSize;
+
+    // 每天凌晨归档一次
+    @Scheduled(cron = "${community.letter.archive.cron:0 0 4 * * *}")
+    public void archive(){
+        // 从月初开始计算，同一个月的私信总是一起归档
+        LocalDate cutoff = LocalDate.now().withDayOfMonth(1).minusMonths(months);
+        Date before = Date.from(cutoff.atStartOfDay(ZoneId.systemDefault()).toInstant());
+
+        // 先建好要写入的月份的分区，包括下次归档的月份，否则私信都会落到pmax中
+        try{
+            ensurePartitions(cutoff);
+        }catch(Exception e){
+            logger.error("创建归档分区失败：" + e.getMessage());
+        }
+
+        archiveLetters(before);
+        purgeNotices();
+    }
+
+    // 从上次保存的水位之后开始扫描，不再每次都从头扫描已经处理过的私信
+    private void archiveLetters(Date before){
+        Object watermark = redisTemplate.opsForValue().get(RedisKeyUtil.getLetterArchiveWatermarkKey());
+        int lastId = watermark == null ? 0 : ((Number) watermark).intValue();
+        // 扫描到的第一条未读私信，它和同一个会话中在它之后的私信下次还要检查，水位不能越过它
+        int firstUnreadId = 0;
+        int total = 0;
+        try{
+            while(true){
+                List<Message> messages = messageMapper.selectMessagesAfterId(lastId, batchSize);
+                if(messages.isEmpty()){
+                    break;
+                }
+
+                // 私信ID随时间递增，遇到不早于截止时间的私信就可以结束
+                boolean reached = false;
+                List<Message> candidates = new ArrayList<>();
+                Set<String> conversationIds = new HashSet<>();
+                for(Message message : messages){
+                    if(!message.getCreateTime().before(before)){
+                        reached = true;
+                        break;
+                    }
+                    lastId = message.getId();
+                    // 系统通知按接收者和主题查询，不在会话中，由purgeNotices按保留期删除
+                    if(message.getFromId() == SYSTEM_USER_ID){
+                        continue;
+                    }
+                    if(message.getStatus() == 0){
+                        if(firstUnreadId == 0){
+                            firstUnreadId = message.getId();
+                        }
+                    }else{
+                        candidates.add(message);
+                        conversationIds.add(message.getConversationId());
+                    }
+                }
+
+                // 每个会话只归档第一条未读私信之前的部分，同一个会话中归档的私信ID总是小于留在message表中的私信ID
+                List<Integer> ids = new ArrayList<>();
+                if(!candidates.isEmpty()){
+                    Map<String, Integer> firstUnreadIds = findFirstUnreadIds(conversationIds);
+                    for(Message message : candidates){
+                        Integer conversationFirstUnreadId = firstUnreadIds.get(message.getConversationId());
+                        if(conversationFirstUnreadId == null || message.getId() < conversationFirstUnreadId){
+                            ids.add(message.getId());
+                        }
+                    }
+                }
+                if(!ids.isEmpty()){
+                    total += messageService.archiveMessages(ids);
+                }
+
+                if(reached || messages.size() < batchSize){
+                    break;
+                }
+            }
+
+            // 留下的已读私信都排在同一个会话的某条未读私信之后，只要从第一条未读私信开始扫描就不会漏掉
+            int next = firstUnreadId == 0 ? lastId : Math.min(lastId, firstUnreadId - 1);
+            redisTemplate.opsForValue().set(RedisKeyUtil.getLetterArchiveWatermarkKey(), next);
+        }catch(Exception e){
+            // 失败时不移动水位，下次从原来的位置重新扫描
+            logger.error("归档私信失败：" + e.getMessage());
+        }
+        if(total > 0){
+            logger.info(String.format("[任务完成] 已归档私信：%d", total));
+        }
+    }
+
+    // 系统通知不归档，保留期之前的已读通知直接分批删除
+    private void purgeNotices(){
+        LocalDate cutoff = LocalDate.now().minusMonths(noticeRetentionMonths);
+        Date before = Date.from(cutoff.atStartOfDay(ZoneId.systemDefault()).toInstant());
+        int total = 0;
+        try{
+            while(true){
+                int rows = messageMapper.deleteReadNoticesBefore(before, batchSize);
+                total += rows;
+                if(rows < batchSize){
+                    break;
+                }
+            }
+        }catch(Exception e){
+            logger.error("删除过期通知失败：" + e.getMessage());
+        }
+        if(total > 0){
+            logger.info(String.format("[任务完成] 已删除过期通知：%d", total));
+        }
+    }
+
+    // 把pmax拆分出从最后一个月份分区到截止月份(包括)之间缺少的分区，分区名为pyyyyMM，上界为下个月的第一天
+    private void ensurePartitions(LocalDate cutoff){
+        LocalDate latest = null;
+        for(String name : messageMapper.selectArchivePartitions()){
+            if(name.matches("p\\d{6}")){
+                LocalDate month = LocalDate.parse(name.substring(1) + "01", PARTITION_FORMAT);
+                if(latest == null || month.isAfter(latest)){
+                    latest = month;
+                }
+            }
+        }
+        LocalDate month = latest == null ? cutoff.minusMonths(1) : latest.plusMonths(1);
+        for(; !month.isAfter(cutoff); month = month.plusMonths(1)){
+            String name = "p" + month.format(PARTITION_FORMAT).substring(0, 6);
+            messageMapper.splitArchivePartition(name, month.plusMonths(1).toString());
+            logger.info("已创建归档分区：" + name);
+        }
+    }
+
+    // 每个会话第一条未读私信的ID，没有未读私信的会话不在结果中
+    private Map<String, Integer> findFirstUnreadIds(Collection<String> conversationIds){
+        Map<String, Integer> firstUnreadIds = new HashMap<>();
+        for(Map<String, Object> row : messageMapper.selectFirstUnreadIds(conversationIds)){
+            firstUnreadIds.put((String) row.get("conversationId"), ((Number) row.get("firstUnreadId")).intValue());
+        }
+        return firstUnreadIds;
+    }
+
+}
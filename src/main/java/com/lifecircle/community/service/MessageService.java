@@ -1,50 +1,185 @@
 package com.lifecircle.community.service;
 
+import com.lifecircle.community.dao.ConversationMapper;
 import com.lifecircle.community.dao.MessageMapper;
+import com.lifecircle.community.entity.Conversation;
 import com.lifecircle.community.entity.Message;
+import com.lifecircle.community.util.CommunityConstant;
 import com.lifecircle.community.util.SensitiveFilter;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Isolation;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
 import org.springframework.web.util.HtmlUtils;
 
-import java.util.List;
+import java.util.*;
 
 @Service
-public class MessageService {
+public class MessageService implements CommunityConstant {
 
     @Autowired
     private MessageMapper messageMapper;
 
+    @Autowired
+    private ConversationMapper conversationMapper;
+
     @Autowired
     private SensitiveFilter sensitiveFilter;
 
-    public List<Message> findConversations(int userId, int offset, int limit){
-        return messageMapper.selectConversations(userId, offset, limit);
+    @Autowired
+    private LetterUnreadService letterUnreadService;
+
+    @Autowired
+    private LetterStreamService letterStreamService;
+
+    // 会话列表从会话摘要表中查询，每个会话带有最新的私信、私信数量和未读数量
+    public List<Conversation> findConversations(int userId, int offset, int limit){
+        return conversationMapper.selectConversations(userId, offset, limit);
     }
 
     public int findConversationCount(int userId){
-        return messageMapper.selectConversationCount(userId);
+        return conversationMapper.selectConversationCount(userId);
     }
 
+    // 先查询message表，这一页超出了message表中的私信时再从归档表补齐
     public List<Message> findLetters(String conversationId, int offset, int limit){
-        return messageMapper.selectLetters(conversationId, offset, limit);
+        List<Message> letters = messageMapper.selectLetters(conversationId, offset, limit);
+        if(letters.size() < limit){
+            int hotCount = letters.isEmpty() ? messageMapper.selectLetterCount(conversationId) : offset + letters.size();
+            letters = new ArrayList<>(letters);
+            letters.addAll(messageMapper.selectArchivedLetters(conversationId,
+                    Math.max(offset - hotCount, 0), limit - letters.size()));
+        }
+        return letters;
+    }
+
+    // 同一个会话中归档的私信ID都小于message表中的私信ID(归档任务只移走第一条未读私信之前的部分)，游标可以直接延续到归档表
+    public List<Message> findLettersBefore(String conversationId, int cursor, int limit){
+        List<Message> letters = messageMapper.selectLettersBefore(conversationId, cursor, limit);
+        if(letters.size() < limit){
+            int archivedCursor = letters.isEmpty() ? cursor : letters.get(letters.size() - 1).getId();
+            letters = new ArrayList<>(letters);
+            letters.addAll(messageMapper.selectArchivedLettersBefore(conversationId, archivedCursor, limit - letters.size()));
+        }
+        return letters;
     }
 
     public int findLetterCount(String conversationId){
         return messageMapper.selectLetterCount(conversationId);
     }
 
+    // 会话的私信数量，包括已归档的私信，从会话摘要中按主键查询
+    public int findLetterCount(int userId, String conversationId){
+        Conversation conversation = conversationMapper.selectConversation(userId, conversationId);
+        return conversation != null ? conversation.getLetterCount() : messageMapper.selectLetterCount(conversationId);
+    }
+
+    // conversationId为null时查询所有会话的未读数量
     public int findLetterUnreadCount(int userId, String conversationId){
-        return messageMapper.selectLetterUnreadCount(userId, conversationId);
+        if(conversationId == null){
+            return conversationMapper.selectUnreadCount(userId);
+        }
+        Conversation conversation = conversationMapper.selectConversation(userId, conversationId);
+        return conversation == null ? 0 : conversation.getUnreadCount();
+    }
+
+    // 按主题汇总的系统通知，每个主题带有最新的通知、通知数量和未读数量
+    public List<Conversation> findNoticeSummaries(int userId){
+        return messageMapper.selectNoticeSummaries(userId);
     }
 
+    public List<Message> findNotices(int userId, String topic, int offset, int limit){
+        return messageMapper.selectNotices(userId, topic, offset, limit);
+    }
+
+    public int findNoticeCount(int userId, String topic){
+        return messageMapper.selectNoticeCount(userId, topic);
+    }
+
+    // topic为null时查询所有主题的未读通知数量
+    public int findNoticeUnreadCount(int userId, String topic){
+        return messageMapper.selectNoticeUnreadCount(userId, topic);
+    }
+
+    // 新增私信的同时更新双方的会话摘要
+    @Transactional(isolation = Isolation.READ_COMMITTED, propagation = Propagation.REQUIRED)
     public int addMessage(Message message){
         message.setContent(HtmlUtils.htmlEscape(message.getContent()));
         message.setContent(sensitiveFilter.filter(message.getContent()));
-        return messageMapper.insertMessage(message);
+        int rows = messageMapper.insertMessage(message);
+
+        // 系统通知不属于会话
+        if(rows > 0 && message.getFromId() != SYSTEM_USER_ID){
+            Date now = new Date();
+            String conversationId = message.getConversationId();
+            if(message.getFromId() == message.getToId()){
+                conversationMapper.upsertConversation(message.getFromId(), conversationId, message.getId(), 0, now);
+            }else{
+                // 总是先更新user_id较小的一行，A给B和B给A同时发私信时按相同的顺序加锁，不会死锁
+                int unread = message.getStatus() == 0 ? 1 : 0;
+                if(message.getFromId() < message.getToId()){
+                    conversationMapper.upsertConversation(message.getFromId(), conversationId, message.getId(), 0, now);
+                    conversationMapper.upsertConversation(message.getToId(), conversationId, message.getId(), unread, now);
+                }else{
+                    conversationMapper.upsertConversation(message.getToId(), conversationId, message.getId(), unread, now);
+                    conversationMapper.upsertConversation(message.getFromId(), conversationId, message.getId(), 0, now);
+                }
+                if(message.getStatus() == 0){
+                    letterUnreadService.increase(message.getToId(), conversationId, 1);
+                }
+                // 提交后推送给接收者
+                letterStreamService.publishLetter(message);
+            }
+        }
+        return rows;
     }
 
+    // 设置已读，只有确实从未读变为已读的私信才减少会话的未读数量
+    @Transactional(isolation = Isolation.READ_COMMITTED, propagation = Propagation.REQUIRED)
     public int readMessage(List<Integer> ids){
-        return messageMapper.updateStatus(ids, 1);
+        if(ids == null || ids.isEmpty()){
+            return 0;
+        }
+        List<Message> unread = messageMapper.selectUnreadByIdsForUpdate(ids);
+        if(unread.isEmpty()){
+            return 0;
+        }
+
+        List<Integer> unreadIds = new ArrayList<>(unread.size());
+        // key为toId和conversationId
+        Map<String, Integer> counts = new HashMap<>();
+        Map<String, Message> samples = new HashMap<>();
+        for(Message message : unread){
+            unreadIds.add(message.getId());
+            if(message.getFromId() != SYSTEM_USER_ID){
+                String key = message.getToId() + ":" + message.getConversationId();
+                counts.merge(key, 1, Integer::sum);
+                samples.putIfAbsent(key, message);
+            }
+        }
+
+        int rows = messageMapper.updateStatus(unreadIds, 1);
+        for(Map.Entry<String, Integer> entry : counts.entrySet()){
+            Message message = samples.get(entry.getKey());
+            conversationMapper.decreaseUnreadCount(message.getToId(), message.getConversationId(), entry.getValue());
+            letterUnreadService.increase(message.getToId(), message.getConversationId(), -entry.getValue());
+        }
+        // 未读数量变化后推送给读取私信的用户，同一个用户的其他页面也会更新
+        Set<Integer> readers = new HashSet<>();
+        for(Message message : samples.values()){
+            readers.add(message.getToId());
+        }
+        for(Integer reader : readers){
+            letterStreamService.publishUnreadAfterCommit(reader);
+        }
+        return rows;
+    }
+
+    // 把一批消息移到归档表
+    @Transactional(isolation = Isolation.READ_COMMITTED, propagation = Propagation.REQUIRED)
+    public int archiveMessages(List<Integer> ids){
+        messageMapper.insertArchivedMessages(ids);
+        return messageMapper.deleteMessages(ids);
     }
 }
@@ -0,0 +1,171 @@
+package com.lifecircle.community.service;
+
+import com.lifecircle.community.dao.DiscussPostMapper;
+import com.lifecircle.community.entity.DiscussPost;
+import com.lifecircle.community.util.CommunityConstant;
+import com.lifecircle.community.util.RedisKeyUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 帖子热度
+ * 发帖、评论、给帖子点赞时，帖子ID被放进Redis的集合中，
+ * 定时任务每次从集合中取出一批帖子，批量查询评论数和点赞数，重新计算分数后用一条语句写回
+ * 只有发生过变化的帖子才会重新计算
+ */
+@Service
+public class PostScoreService implements CommunityConstant {
+
+    private static final Logger logger = LoggerFactory.getLogger(PostScoreService.class);
+
+    // 社区纪元，帖子的发布时间从这一天开始计算
+    private static final Date EPOCH;
+
+    static {
+        try {
+            EPOCH = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").parse("2024-01-01 00:00:00");
+        } catch (ParseException e) {
+            throw new RuntimeException("初始化社区纪元失败!", e);
+        }
+    }
+
+    @Autowired
+    private DiscussPostMapper discussPostMapper;
+
+    @Autowired
+    private LikeService likeService;
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+
+    @Autowired
+    private FeedCacheService feedCacheService;
+
+    // 每批重新计算的帖子数量
+    @Value("${community.post.score.batch-size:200}")
+    private int batchSize;
+
+    // 上线之前的帖子分数都是0，启动时把它们全部标记一次，由定时任务计算；只有一个节点执行，执行过后不再执行
+    @Async
+    @EventListener(ApplicationReadyEvent.class)
+    public void backfill(){
+        if(!Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(RedisKeyUtil.getPostScoreBackfillKey(), 1))){
+            return;
+        }
+        int lastId = 0;
+        int total = 0;
+        try{
+            while(true){
+                List<DiscussPost> posts = discussPostMapper.selectDiscussPostsAfterId(lastId, batchSize);
+                if(posts.isEmpty()){
+                    break;
+                }
+                List<Object> postIds = new ArrayList<>();
+                for(DiscussPost post : posts){
+                    if(post.getStatus() != 2 && post.getScore() == 0){
+                        postIds.add(post.getId());
+                    }
+                }
+                if(!postIds.isEmpty()){
+                    redisTemplate.opsForSet().add(RedisKeyUtil.getPostScoreKey(), postIds.toArray());
+                    total += postIds.size();
+                }
+                lastId = posts.get(posts.size() - 1).getId();
+                if(posts.size() < batchSize){
+                    break;
+                }
+            }
+        }catch(Exception e){
+            // 下次启动时重新补算，已经计算过分数的帖子不会再被标记
+            redisTemplate.delete(RedisKeyUtil.getPostScoreBackfillKey());
+            logger.error("补算帖子分数失败：" + e.getMessage());
+        }
+        if(total > 0){
+            logger.info(String.format("[任务完成] 已标记需要补算分数的帖子：%d", total));
+        }
+    }
+
+    // 帖子有变化时，标记为需要重新计算分数
+    public void markDirty(int postId){
+        redisTemplate.opsForSet().add(RedisKeyUtil.getPostScoreKey(), postId);
+    }
+
+    @Scheduled(fixedDelayString = "${community.post.score.refresh-interval:300000}")
+    public void refresh(){
+        String redisKey = RedisKeyUtil.getPostScoreKey();
+        int total = 0;
+        while(true){
+            List<Object> members = redisTemplate.opsForSet().pop(redisKey, batchSize);
+            if(members == null || members.isEmpty()){
+                break;
+            }
+
+            List<Integer> postIds = new ArrayList<>(members.size());
+            for(Object member : members){
+                postIds.add((Integer) member);
+            }
+
+            try{
+                total += refresh(postIds);
+            }catch(Exception e){
+                // 放回集合中，下次再计算
+                redisTemplate.opsForSet().add(redisKey, members.toArray());
+                logger.error("刷新帖子分数失败：" + e.getMessage());
+                break;
+            }
+        }
+        if(total > 0){
+            logger.info(String.format("[任务完成] 已刷新帖子分数：%d", total));
+        }
+    }
+
+    private int refresh(List<Integer> postIds){
+        List<DiscussPost> posts = new ArrayList<>();
+        for(DiscussPost post : discussPostMapper.selectDiscussPostsByIds(postIds)){
+            // 已删除的帖子不再计算
+            if(post.getStatus() != 2){
+                posts.add(post);
+            }
+        }
+        if(posts.isEmpty()){
+            return 0;
+        }
+
+        List<Integer> ids = new ArrayList<>(posts.size());
+        for(DiscussPost post : posts){
+            ids.add(post.getId());
+        }
+        Map<Integer, Long> likeCounts = likeService.findEntityLikeCounts(ENTITY_TYPE_POST, ids);
+
+        for(DiscussPost post : posts){
+            post.setScore(score(post, likeCounts.getOrDefault(post.getId(), 0L)));
+        }
+        discussPostMapper.updateScores(posts);
+        feedCacheService.updateScores(posts);
+        return posts.size();
+    }
+
+    // 分数 = log(精华分 + 评论数 * 10 + 点赞数 * 2) + 距离社区纪元的天数
+    private static double score(DiscussPost post, long likeCount){
+        boolean wonderful = post.getStatus() == 1;
+        double w = (wonderful ? 75 : 0) + post.getCommentCount() * 10 + likeCount * 2;
+        return Math.log10(Math.max(w, 1))
+                + (post.getCreateTime().getTime() - EPOCH.getTime()) / (1000.0 * 3600 * 24);
+    }
+
+}
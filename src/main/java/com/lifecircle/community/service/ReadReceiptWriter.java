@@ -0,0 +1,133 @@
+package com.lifecircle.community.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 私信已读状态的异步写入
+ * 查看私信时只把ID放入队列，后台线程把多个请求、多个用户的ID合并后批量设置已读，
+ * 每批达到指定数量或者等待超过指定时间就写入一次；
+ * 队列满时由调用者自己写入(背压)，停机时写入队列中剩余的ID
+ */
+@Component
+public class ReadReceiptWriter {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReadReceiptWriter.class);
+
+    @Autowired
+    private MessageService messageService;
+
+    // 队列的容量
+    @Value("${community.letter.read.queue-capacity:10000}")
+    private int queueCapacity;
+
+    // 每批写入的最大数量
+    @Value("${community.letter.read.batch-size:200}")
+    private int batchSize;
+
+    // 一批最多等待的时间(毫秒)
+    @Value("${community.letter.read.flush-interval:200}")
+    private long flushInterval;
+
+    private BlockingQueue<Integer> queue;
+
+    private Thread worker;
+
+    private volatile boolean running;
+
+    @PostConstruct
+    public void init(){
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+        running = true;
+        worker = new Thread(this::run, "read-receipt-writer");
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    // 提交已读的私信ID，不等待写入
+    public void submit(List<Integer> ids){
+        if(ids == null || ids.isEmpty()){
+            return;
+        }
+        List<Integer> rejected = null;
+        for(Integer id : ids){
+            if(!running || !queue.offer(id)){
+                if(rejected == null){
+                    rejected = new ArrayList<>();
+                }
+                rejected.add(id);
+            }
+        }
+        // 队列已满或者正在停机，由调用者直接写入
+        if(rejected != null){
+            write(rejected);
+        }
+    }
+
+    private void run(){
+        Set<Integer> batch = new LinkedHashSet<>();
+        long deadline = 0;
+        while(running || !queue.isEmpty()){
+            try{
+                Integer id = batch.isEmpty()
+                        ? queue.poll(flushInterval, TimeUnit.MILLISECONDS)
+                        : queue.poll(Math.max(deadline - System.currentTimeMillis(), 0), TimeUnit.MILLISECONDS);
+                if(id != null){
+                    if(batch.isEmpty()){
+                        deadline = System.currentTimeMillis() + flushInterval;
+                    }
+                    batch.add(id);
+                    // 已经在队列中的ID一次取出，同一条私信只写一次
+                    List<Integer> drained = new ArrayList<>();
+                    queue.drainTo(drained, batchSize - batch.size());
+                    batch.addAll(drained);
+                }
+            }catch(InterruptedException e){
+                // 停机时被中断，继续把队列写完
+            }
+
+            if(!batch.isEmpty() && (batch.size() >= batchSize || System.currentTimeMillis() >= deadline || !running)){
+                write(new ArrayList<>(batch));
+                batch.clear();
+            }
+        }
+        if(!batch.isEmpty()){
+            write(new ArrayList<>(batch));
+        }
+    }
+
+    private void write(List<Integer> ids){
+        try{
+            messageService.readMessage(ids);
+        }catch(Exception e){
+            // 写入失败的私信仍然是未读，下次查看时会再次提交
+            logger.error("设置私信已读失败：" + e.getMessage());
+        }
+    }
+
+    // 停机时等待后台线程写完队列中剩余的ID
+    @PreDestroy
+    public void destroy(){
+        running = false;
+        worker.interrupt();
+        try{
+            worker.join(TimeUnit.SECONDS.toMillis(10));
+        }catch(InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+        if(worker.isAlive()){
+            logger.error("设置私信已读超时，剩余：" + queue.size());
+        }
+    }
+
+}
@@ -0,0 +1,171 @@
+package com.lifecircle.community.service;
+
+import com.lifecircle.community.dao.CommentMapper;
+import com.lifecircle.community.dao.DiscussPostMapper;
+import com.lifecircle.community.dao.MessageMapper;
+import com.lifecircle.community.util.RedisKeyUtil;
+import com.lifecircle.community.util.SensitiveAutomaton;
+import com.lifecircle.community.util.SensitiveFilter;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * 敏感词重新扫描
+ * 敏感词词典更新后，按主键顺序分批读取帖子、评论和私信，每批在多个核上并行扫描，
+ * 只记录命中的位置和数量，不修改原文，内存中始终只有一批数据
+ */
+@Service
+public class SensitiveScanService {
+
+    private static final Logger logger = LoggerFactory.getLogger(SensitiveScanService.class);
+
+    @Autowired
+    private SensitiveFilter sensitiveFilter;
+
+    @Autowired
+    private DiscussPostMapper discussPostMapper;
+
+    @Autowired
+    private CommentMapper commentMapper;
+
+    @Autowired
+    private MessageMapper messageMapper;
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+
+    // 认领记录的保留天数，过期之后旧版本的记录自动删除
+    @Value("${community.sensitive.scan.claim-expire-days:7}")
+    private int claimExpireDays;
+
+    // 每批读取的行数
+    @Value("${community.sensitive.scan.batch-size:500}")
+    private int batchSize;
+
+    // 词典更新后是否自动重新扫描
+    @Value("${community.sensitive.scan.enabled:true}")
+    private boolean enabled;
+
+    // 上次扫描时的词典版本
+    private volatile String scannedVersion;
+
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    // 全表扫描在单独的线程中执行，不占用定时任务的线程
+    private ExecutorService executor;
+
+    @PostConstruct
+    public void init() {
+        // 启动时加载的词典已经在写入时过滤过，不需要扫描
+        scannedVersion = sensitiveFilter.getVersion();
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "sensitive-scan");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // 定时检查词典版本，版本变化后提交一次重新扫描，不等待扫描结束
+    // 每个版本只由一个节点扫描：用SETNX认领版本，没有认领到的节点直接跳过这个版本
+    @Scheduled(fixedDelayString = "${community.sensitive.check-interval:30000}")
+    public void scanIfChanged() {
+        String version = sensitiveFilter.getVersion();
+        if (!enabled || version.equals(scannedVersion) || running.get()) {
+            return;
+        }
+        String scanKey = RedisKeyUtil.getSensitiveScanKey(version);
+        if (!Boolean.TRUE.equals(redisTemplate.opsForValue().setIfAbsent(scanKey, 1, claimExpireDays, TimeUnit.DAYS))) {
+            scannedVersion = version;
+            return;
+        }
+        executor.execute(() -> {
+            if (scanAll() != null) {
+                scannedVersion = version;
+            } else {
+                // 扫描失败时放弃认领，由下一次检查(可能是其他节点)重新扫描
+                redisTemplate.delete(scanKey);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    // 扫描所有帖子、评论和私信，返回每张表命中敏感词的行数，正在扫描时返回null
+    public Map<String, Integer> scanAll() {
+        if (!running.compareAndSet(false, true)) {
+            return null;
+        }
+        try {
+            Map<String, Integer> result = new LinkedHashMap<>();
+            result.put("discuss_post", scan("discuss_post", discussPostMapper::selectDiscussPostsAfterId,
+                    post -> post.getId(), post -> post.getTitle() + "\n" + post.getContent()));
+            result.put("comment", scan("comment", commentMapper::selectCommentsAfterId,
+                    comment -> comment.getId(), comment -> comment.getContent()));
+            result.put("message", scan("message", messageMapper::selectMessagesAfterId,
+                    message -> message.getId(), message -> message.getContent()));
+            logger.info(String.format("敏感词扫描完成，版本[%s]，结果%s.", sensitiveFilter.getVersion(), result));
+            return result;
+        } catch (Exception e) {
+            logger.error("敏感词扫描失败：" + e.getMessage());
+            return null;
+        } finally {
+            running.set(false);
+        }
+    }
+
+    // 按主键分批扫描一张表，loader的参数为上一批最后一行的ID和每批的行数
+    private <T> int scan(String table, BiFunction<Integer, Integer, List<T>> loader,
+                         ToIntFunction<T> idOf, Function<T, String> textOf) {
+        int hits = 0;
+        int lastId = 0;
+        while (true) {
+            List<T> rows = loader.apply(lastId, batchSize);
+            if (rows == null || rows.isEmpty()) {
+                break;
+            }
+
+            List<String> texts = new ArrayList<>(rows.size());
+            for (T row : rows) {
+                texts.add(textOf.apply(row));
+            }
+            List<List<SensitiveAutomaton.Match>> matches = sensitiveFilter.scan(texts);
+
+            for (int i = 0; i < rows.size(); i++) {
+                if (!matches.get(i).isEmpty()) {
+                    hits++;
+                    logger.warn(String.format("[%s]中ID为[%d]的内容包含[%d]处敏感词：%s.",
+                            table, idOf.applyAsInt(rows.get(i)), matches.get(i).size(), matches.get(i)));
+                }
+            }
+
+            lastId = idOf.applyAsInt(rows.get(rows.size() - 1));
+            if (rows.size() < batchSize) {
+                break;
+            }
+        }
+        return hits;
+    }
+
+}
@@ -0,0 +1,101 @@
+package com.lifecircle.community.service;
+
+import com.lifecircle.community.util.RedisKeyUtil;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 用集合保存点赞关系
+ * like:entity:entityType:entityId -> set(userId)
+ */
+@Component
+@ConditionalOnProperty(name = "community.like.storage", havingValue = "set", matchIfMissing = true)
+public class SetLikeStorage implements LikeStorage {
+
+    // 判断状态、修改点赞集合、修改实体和用户的计数都在一个脚本中完成，只需要一次网络往返
+    private static final RedisScript<List> TOGGLE = new DefaultRedisScript<>(
+            "if redis.call('exists', KEYS[2]) == 0 or redis.call('exists', KEYS[3]) == 0 then return {-1, -1} end " +
+            "if redis.call('sismember', KEYS[1], ARGV[1]) == 1 then " +
+            "redis.call('srem', KEYS[1], ARGV[1]) redis.call('decr', KEYS[3]) " +
+            "return {redis.call('decr', KEYS[2]), 0} end " +
+            "redis.call('sadd', KEYS[1], ARGV[1]) redis.call('incr', KEYS[3]) " +
+            "return {redis.call('incr', KEYS[2]), 1}",
+            List.class);
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+
+    @Override
+    public List<Long> toggle(int userId, int entityType, int entityId, int entityUserId){
+        List<String> keys = Arrays.asList(
+                RedisKeyUtil.getEntityLikeKey(entityType, entityId),
+                RedisKeyUtil.getEntityLikeCountKey(entityType, entityId),
+                RedisKeyUtil.getUserLikeKey(entityUserId));
+        return (List<Long>) redisTemplate.execute(TOGGLE, keys, userId);
+    }
+
+    @Override
+    public boolean isMember(int userId, int entityType, int entityId){
+        String entityLikeKey = RedisKeyUtil.getEntityLikeKey(entityType, entityId);
+        return Boolean.TRUE.equals(redisTemplate.opsForSet().isMember(entityLikeKey, userId));
+    }
+
+    // 所有的SISMEMBER通过管道一次发送
+    @Override
+    public List<Boolean> isMembers(int userId, int entityType, List<Integer> entityIds){
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback() {
+            @Override
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                for(Integer entityId : entityIds){
+                    String entityLikeKey = RedisKeyUtil.getEntityLikeKey(entityType, entityId);
+                    operations.opsForSet().isMember(entityLikeKey, userId);
+                }
+                return null;
+            }
+        });
+
+        List<Boolean> statuses = new ArrayList<>(results.size());
+        for(Object result : results){
+            statuses.add(Boolean.TRUE.equals(result));
+        }
+        return statuses;
+    }
+
+    @Override
+    public long cardinality(int entityType, int entityId){
+        Long size = redisTemplate.opsForSet().size(RedisKeyUtil.getEntityLikeKey(entityType, entityId));
+        return size == null ? 0 : size;
+    }
+
+    // 所有的SCARD通过管道一次发送
+    @Override
+    public List<Long> cardinalities(int entityType, List<Integer> entityIds){
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback() {
+            @Override
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                for(Integer entityId : entityIds){
+                    operations.opsForSet().size(RedisKeyUtil.getEntityLikeKey(entityType, entityId));
+                }
+                return null;
+            }
+        });
+
+        List<Long> sizes = new ArrayList<>(results.size());
+        for(Object result : results){
+            sizes.add(result == null ? 0 : ((Number) result).longValue());
+        }
+        return sizes;
+    }
+
+}
@@ -0,0 +1,248 @@
+package com.lifecircle.community.service;
+
+import com.lifecircle.community.dao.DiscussPostMapper;
+import com.lifecircle.community.entity.DiscussPost;
+import com.lifecircle.community.util.CommunityConstant;
+import com.lifecircle.community.util.RedisKeyUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.scheduling.annotation.Async;
+import org.springframework.stereotype.Service;
+
+import java.util.*;
+
+/**
+ * 关注动态
+ * 发帖时把帖子ID分批推送到每个粉丝的动态列表中(写扩散)，读取时直接按时间倒序分页；
+ * 粉丝数量超过阈值的作者不再推送，粉丝读取时再合并这些作者最近发布的帖子(读扩散)
+ */
+@Service
+public class TimelineService implements CommunityConstant {
+
+    private static final Logger logger = LoggerFactory.getLogger(TimelineService.class);
+
+    @Autowired
+    private FollowService followService;
+
+    @Autowired
+    private DiscussPostMapper discussPostMapper;
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+
+    // 每个用户的动态列表保留的帖子数量
+    @Value("${community.timeline.size:800}")
+    private int size;
+
+    // 每个作者最近发布的帖子保留的数量
+    @Value("${community.timeline.author-size:100}")
+    private int authorSize;
+
+    // 每批推送的粉丝数量
+    @Value("${community.timeline.batch-size:500}")
+    private int batchSize;
+
+    // 粉丝数量达到这个值的作者改为读扩散
+    @Value("${community.timeline.celebrity-threshold:5000}")
+    private long celebrityThreshold;
+
+    // 推送新帖子，在发帖的请求之外异步执行
+    @Async
+    public void push(DiscussPost post){
+        int authorId = post.getUserId();
+        int postId = post.getId();
+        double score = post.getCreateTime().getTime();
+        try{
+            String userPostsKey = RedisKeyUtil.getUserPostsKey(authorId);
+            redisTemplate.opsForZSet().add(userPostsKey, postId, score);
+            redisTemplate.opsForZSet().removeRange(userPostsKey, 0, -authorSize - 1);
+
+            // 作者自己的动态中也有自己的帖子
+            pushBatch(Collections.singletonList(authorId), postId, score);
+
+            // 一旦成为读扩散的作者就不再切换回来，否则粉丝会看不到之前没有推送的帖子
+            if(isCelebrity(authorId)){
+                return;
+            }
+            if(followService.findFollowerCount(ENTITY_TYPE_USER, authorId) >= celebrityThreshold){
+                redisTemplate.opsForSet().add(RedisKeyUtil.getTimelineCelebrityKey(), authorId);
+                return;
+            }
+
+            // 按关注时间从新到旧分批遍历，游标为上一批最后的关注时间，推送期间的关注和取消关注不会让后面的粉丝错位
+            // 同一时间关注的粉丝可能跨两批，游标处已经推送过的粉丝记录下来跳过
+            double cursor = Double.POSITIVE_INFINITY;
+            Set<Integer> pushedAtCursor = new HashSet<>();
+            while(true){
+                int limit = batchSize + pushedAtCursor.size();
+                List<ZSetOperations.TypedTuple<Integer>> tuples =
+                        followService.findFollowersByScore(ENTITY_TYPE_USER, authorId, cursor, limit);
+                List<Integer> followerIds = new ArrayList<>(tuples.size());
+                for(ZSetOperations.TypedTuple<Integer> tuple : tuples){
+                    if(tuple.getScore() != cursor || !pushedAtCursor.contains(tuple.getValue())){
+                        followerIds.add(tuple.getValue());
+                    }
+                }
+                if(!followerIds.isEmpty()){
+                    pushBatch(followerIds, postId, score);
+                }
+                if(tuples.size() < limit || followerIds.isEmpty()){
+                    break;
+                }
+
+                double last = tuples.get(tuples.size() - 1).getScore();
+                if(last != cursor){
+                    cursor = last;
+                    pushedAtCursor.clear();
+                }
+                for(ZSetOperations.TypedTuple<Integer> tuple : tuples){
+                    if(tuple.getScore() == cursor){
+                        pushedAtCursor.add(tuple.getValue());
+                    }
+                }
+            }
+        }catch(Exception e){
+            logger.error("推送关注动态失败：" + e.getMessage());
+        }
+    }
+
+    // 一批粉丝的ZADD和截断通过管道一次发送
+    private void pushBatch(List<Integer> userIds, int postId, double score){
+        redisTemplate.executePipelined(new SessionCallback() {
+            @Override
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                for(Integer userId : userIds){
+                    String timelineKey = RedisKeyUtil.getTimelineKey(userId);
+                    operations.opsForZSet().add(timelineKey, postId, score);
+                    operations.opsForZSet().removeRange(timelineKey, 0, -size - 1);
+                }
+                return null;
+            }
+        });
+    }
+
+    // 关注某人后，把他最近的帖子补进动态列表
+    public void follow(int userId, int followeeId){
+        if(isCelebrity(followeeId)){
+            return;
+        }
+        Set<ZSetOperations.TypedTuple<Object>> tuples = redisTemplate.opsForZSet()
+                .reverseRangeWithScores(RedisKeyUtil.getUserPostsKey(followeeId), 0, authorSize - 1);
+        if(tuples == null || tuples.isEmpty()){
+            return;
+        }
+        String timelineKey = RedisKeyUtil.getTimelineKey(userId);
+        redisTemplate.opsForZSet().add(timelineKey, tuples);
+        redisTemplate.opsForZSet().removeRange(timelineKey, 0, -size - 1);
+    }
+
+    // 取消关注后，从动态列表中移除他最近的帖子
+    public void unfollow(int userId, int followeeId){
+        Set<Object> postIds = redisTemplate.opsForZSet().range(RedisKeyUtil.getUserPostsKey(followeeId), 0, -1);
+        if(postIds == null || postIds.isEmpty()){
+            return;
+        }
+        redisTemplate.opsForZSet().remove(RedisKeyUtil.getTimelineKey(userId), postIds.toArray());
+    }
+
+    // 查询某用户的关注动态
+    public List<DiscussPost> findTimeline(int userId, int offset, int limit){
+        List<Integer> celebrityIds = findFollowedCelebrities(userId);
+        int end = offset + limit - 1;
+
+        // 自己的动态列表和关注的读扩散作者的帖子一起取出
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback() {
+            @Override
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                operations.opsForZSet().reverseRangeWithScores(RedisKeyUtil.getTimelineKey(userId), 0, end);
+                for(Integer celebrityId : celebrityIds){
+                    operations.opsForZSet().reverseRangeWithScores(RedisKeyUtil.getUserPostsKey(celebrityId), 0, end);
+                }
+                return null;
+            }
+        });
+
+        // 按发布时间倒序合并，同一时间按ID倒序
+        Map<Integer, Double> scores = new HashMap<>();
+        for(Object result : results){
+            if(result == null){
+                continue;
+            }
+            for(Object item : (Set<?>) result){
+                ZSetOperations.TypedTuple<?> tuple = (ZSetOperations.TypedTuple<?>) item;
+                scores.put((Integer) tuple.getValue(), tuple.getScore());
+            }
+        }
+        List<Integer> postIds = new ArrayList<>(scores.keySet());
+        postIds.sort((a, b) -> {
+            int c = Double.compare(scores.get(b), scores.get(a));
+            return c != 0 ? c : Integer.compare(b, a);
+        });
+        if(offset >= postIds.size()){
+            return new ArrayList<>();
+        }
+        postIds = postIds.subList(offset, Math.min(offset + limit, postIds.size()));
+
+        Map<Integer, DiscussPost> postMap = new HashMap<>();
+        for(DiscussPost post : discussPostMapper.selectDiscussPostsByIds(postIds)){
+            postMap.put(post.getId(), post);
+        }
+        // 已删除的帖子不显示
+        List<DiscussPost> posts = new ArrayList<>(postIds.size());
+        for(Integer postId : postIds){
+            DiscussPost post = postMap.get(postId);
+            if(post != null && post.getStatus() != 2){
+                posts.add(post);
+            }
+        }
+        return posts;
+    }
+
+    // 关注动态的数量，最多为动态列表保留的数量
+    public int findTimelineRows(int userId){
+        List<Integer> celebrityIds = findFollowedCelebrities(userId);
+        List<Object> results = redisTemplate.executePipelined(new SessionCallback() {
+            @Override
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                operations.opsForZSet().zCard(RedisKeyUtil.getTimelineKey(userId));
+                for(Integer celebrityId : celebrityIds){
+                    operations.opsForZSet().zCard(RedisKeyUtil.getUserPostsKey(celebrityId));
+                }
+                return null;
+            }
+        });
+
+        long rows = 0;
+        for(Object result : results){
+            rows += result == null ? 0 : ((Number) result).longValue();
+        }
+        return (int) Math.min(rows, size);
+    }
+
+    private boolean isCelebrity(int userId){
+        return Boolean.TRUE.equals(redisTemplate.opsForSet().isMember(RedisKeyUtil.getTimelineCelebrityKey(), userId));
+    }
+
+    // 某用户关注的读扩散作者，读扩散的作者数量很少，逐个检查关注状态
+    private List<Integer> findFollowedCelebrities(int userId){
+        Set<Object> members = redisTemplate.opsForSet().members(RedisKeyUtil.getTimelineCelebrityKey());
+        List<Integer> celebrityIds = new ArrayList<>();
+        if(members == null || members.isEmpty()){
+            return celebrityIds;
+        }
+        for(Object member : members){
+            celebrityIds.add((Integer) member);
+        }
+        Map<Integer, Boolean> statuses = followService.hasFollowed(userId, ENTITY_TYPE_USER, celebrityIds);
+        celebrityIds.removeIf(celebrityId -> !statuses.getOrDefault(celebrityId, false) || celebrityId == userId);
+        return celebrityIds;
+    }
+
+}
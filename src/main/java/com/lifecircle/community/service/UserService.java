@@ -1,5 +1,8 @@
 package com.lifecircle.community.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
 import com.lifecircle.community.dao.LoginTicketMapper;
 import com.lifecircle.community.dao.UserMapper;
 import com.lifecircle.community.entity.LoginTicket;
@@ -8,23 +11,33 @@ import com.lifecircle.community.util.CommunityConstant;
 import com.lifecircle.community.util.CommunityUtil;
 import com.lifecircle.community.util.MailClient;
 import com.lifecircle.community.util.RedisKeyUtil;
+import com.lifecircle.community.util.RequestCacheHolder;
+import jakarta.annotation.PostConstruct;
 import org.apache.commons.lang3.StringUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.data.redis.core.SessionCallback;
+import org.springframework.data.redis.listener.ChannelTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.thymeleaf.TemplateEngine;
 import org.thymeleaf.context.Context;
 
-import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.Random;
+import java.util.*;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 @Service
 public class UserService implements CommunityConstant {
 
+    private static final Logger logger = LoggerFactory.getLogger(UserService.class);
+
     @Autowired
     private UserMapper userMapper;
 
@@ -43,16 +56,112 @@ public class UserService implements CommunityConstant {
     @Autowired
     private RedisTemplate redisTemplate;
 
+    @Autowired
+    private RedisMessageListenerContainer redisMessageListenerContainer;
+
+    @Autowired
+    private RequestCacheHolder requestCacheHolder;
+
 //    @Autowired
 //    private LoginTicketMapper loginTicketMapper;
 
+    // 本地缓存的最大用户数量
+    @Value("${community.user.cache.local.max-size:10000}")
+    private int localCacheMaxSize;
+
+    // 本地缓存的过期时间，失效广播丢失时最多在这段时间内读到旧数据
+    @Value("${community.user.cache.local.expire-seconds:60}")
+    private int localCacheExpireSeconds;
+
+    // 一级缓存：进程内的本地缓存
+    private Cache<Integer, User> localCache;
+
+    // 二级缓存(Redis)的命中和未命中次数
+    private final LongAdder redisHits = new LongAdder();
+    private final LongAdder redisMisses = new LongAdder();
+
+    @PostConstruct
+    public void init(){
+        localCache = Caffeine.newBuilder()
+                .maximumSize(localCacheMaxSize)
+                .expireAfterWrite(localCacheExpireSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+
+        // 任何节点清除用户缓存时，所有节点都清除自己的本地缓存
+        redisMessageListenerContainer.addMessageListener((message, pattern) -> {
+            Object userId = redisTemplate.getValueSerializer().deserialize(message.getBody());
+            if(userId instanceof Integer id){
+                localCache.invalidate(id);
+            }
+        }, new ChannelTopic(RedisKeyUtil.getUserEvictChannel()));
+    }
+
     public User findUserById(int id){
 //        return userMapper.selectById(id);
-        User user = getCache(id);
-        if(user == null){
-            user = initCache(id);
+        // 同一次请求中多次查询同一个用户时，只查一次缓存
+        return requestCacheHolder.get(RedisKeyUtil.getUserKey(id), () -> {
+            User user = getCache(id);
+            if(user == null){
+                user = initCache(id);
+            }
+            return user;
+        });
+    }
+
+    // 批量查询用户：先用一次MGET从缓存取值，未命中的用户再用一条in查询补齐
+    public Map<Integer, User> findUsersByIds(Collection<Integer> ids){
+        Map<Integer, User> users = new HashMap<>();
+        if(ids == null || ids.isEmpty()){
+            return users;
         }
-        return user;
+
+        // 先从请求级别缓存和本地缓存取值
+        List<Integer> userIds = new ArrayList<>();
+        for(Integer userId : new LinkedHashSet<>(ids)){
+            String redisKey = RedisKeyUtil.getUserKey(userId);
+            User user = requestCacheHolder.contains(redisKey) ? requestCacheHolder.get(redisKey) : localCache.getIfPresent(userId);
+            if(user != null){
+                users.put(userId, user);
+                requestCacheHolder.put(redisKey, user);
+            }else{
+                userIds.add(userId);
+            }
+        }
+        if(userIds.isEmpty()){
+            return users;
+        }
+
+        List<String> redisKeys = new ArrayList<>(userIds.size());
+        for(Integer userId : userIds){
+            redisKeys.add(RedisKeyUtil.getUserKey(userId));
+        }
+
+        List<Object> cached = redisTemplate.opsForValue().multiGet(redisKeys);
+        List<Integer> missIds = new ArrayList<>();
+        for(int i = 0; i < userIds.size(); i++){
+            Object value = cached == null ? null : cached.get(i);
+            if(value != null){
+                users.put(userIds.get(i), (User) value);
+                localCache.put(userIds.get(i), (User) value);
+                requestCacheHolder.put(redisKeys.get(i), value);
+            }else{
+                missIds.add(userIds.get(i));
+            }
+        }
+        redisHits.add(userIds.size() - missIds.size());
+        redisMisses.add(missIds.size());
+
+        if(!missIds.isEmpty()){
+            List<User> list = userMapper.selectByIds(missIds);
+            for(User user : list){
+                users.put(user.getId(), user);
+                requestCacheHolder.put(RedisKeyUtil.getUserKey(user.getId()), user);
+            }
+            initCache(list);
+        }
+
+        return users;
     }
 
     public Map<String, Object> register(User user){
@@ -200,10 +309,22 @@ public class UserService implements CommunityConstant {
         return userMapper.selectByName(userName);
     }
 
-    // 1.优先从缓存中取值
+    // 1.优先从缓存中取值，先查本地缓存，再查Redis
     private User getCache(int userId){
+        User user = localCache.getIfPresent(userId);
+        if(user != null){
+            return user;
+        }
+
         String redisKey = RedisKeyUtil.getUserKey(userId);
-        return (User) redisTemplate.opsForValue().get(redisKey);
+        user = (User) redisTemplate.opsForValue().get(redisKey);
+        if(user != null){
+            redisHits.increment();
+            localCache.put(userId, user);
+        }else{
+            redisMisses.increment();
+        }
+        return user;
     }
 
     // 2.取不到时初始化缓存数据
@@ -211,13 +332,57 @@ public class UserService implements CommunityConstant {
         User user = userMapper.selectById(userId);
         String redisKey = RedisKeyUtil.getUserKey(userId);
         redisTemplate.opsForValue().set(redisKey, user, 3600, TimeUnit.SECONDS);
+        if(user != null){
+            localCache.put(userId, user);
+        }
         return user;
     }
 
-    // 3.数据变更时清楚缓存数据
+    // 批量初始化缓存，通过管道一次写入
+    private void initCache(List<User> users){
+        if(users.isEmpty()){
+            return;
+        }
+        redisTemplate.executePipelined(new SessionCallback() {
+            @Override
+            public Object execute(RedisOperations operations) throws DataAccessException {
+                for(User user : users){
+                    String redisKey = RedisKeyUtil.getUserKey(user.getId());
+                    operations.opsForValue().set(redisKey, user, 3600, TimeUnit.SECONDS);
+                }
+                return null;
+            }
+        });
+        for(User user : users){
+            localCache.put(user.getId(), user);
+        }
+    }
+
+    // 3.数据变更时清楚缓存数据，并通知其他节点清除本地缓存
     private void clearCache(int userId){
         String redisKey = RedisKeyUtil.getUserKey(userId);
         redisTemplate.delete(redisKey);
+        localCache.invalidate(userId);
+        requestCacheHolder.evict(redisKey);
+        redisTemplate.convertAndSend(RedisKeyUtil.getUserEvictChannel(), userId);
+    }
+
+    // 用户缓存各级的命中情况
+    public Map<String, Object> getCacheStats(){
+        CacheStats stats = localCache.stats();
+        Map<String, Object> map = new HashMap<>();
+        map.put("localHits", stats.hitCount());
+        map.put("localMisses", stats.missCount());
+        map.put("localEvictions", stats.evictionCount());
+        map.put("localSize", localCache.estimatedSize());
+        map.put("redisHits", redisHits.sum());
+        map.put("redisMisses", redisMisses.sum());
+        return map;
+    }
+
+    @Scheduled(fixedDelayString = "${community.user.cache.stats-interval:300000}")
+    public void logCacheStats(){
+        logger.info("用户缓存命中情况：" + getCacheStats());
     }
 
 }
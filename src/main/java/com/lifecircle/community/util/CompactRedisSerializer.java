@@ -0,0 +1,209 @@
+package com.lifecircle.community.util;
+
+import com.lifecircle.community.entity.LoginTicket;
+import com.lifecircle.community.entity.User;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+/**
+ * Redis中value的序列化方式
+ * 整数(点赞、关注集合中的ID，各种计数)写成十进制数字，和原来的JSON格式一致，INCR和Lua脚本可以直接使用；
+ * User和LoginTicket写成紧凑的二进制格式，不再带有类型信息，也不需要反射解析；
+ * 其他类型仍然使用JSON，升级前写入的JSON数据也能正常读取
+ */
+public class CompactRedisSerializer implements RedisSerializer<Object> {
+
+    // 二进制格式的第一个字节，JSON不会以这些字节开头
+    private static final byte TYPE_USER = 0x01;
+
+    private static final byte TYPE_LOGIN_TICKET = 0x02;
+
+    // 格式的版本，字段发生变化时递增
+    private static final byte VERSION = 1;
+
+    // Date为null时写入的值
+    private static final long NULL_DATE = Long.MIN_VALUE;
+
+    private final RedisSerializer<Object> json;
+
+    public CompactRedisSerializer(){
+        this(RedisSerializer.json());
+    }
+
+    public CompactRedisSerializer(RedisSerializer<Object> json){
+        this.json = json;
+    }
+
+    @Override
+    public byte[] serialize(Object value) throws SerializationException {
+        if(value == null){
+            return new byte[0];
+        }
+        if(value instanceof Integer || value instanceof Long || value instanceof Short){
+            return value.toString().getBytes(StandardCharsets.US_ASCII);
+        }
+        try{
+            if(value instanceof User){
+                return writeUser((User) value);
+            }
+            if(value instanceof LoginTicket){
+                return writeLoginTicket((LoginTicket) value);
+            }
+        }catch(IOException e){
+            throw new SerializationException("序列化失败：" + e.getMessage(), e);
+        }
+        return json.serialize(value);
+    }
+
+    @Override
+    public Object deserialize(byte[] bytes) throws SerializationException {
+        if(bytes == null || bytes.length == 0){
+            return null;
+        }
+        Object number = parseNumber(bytes);
+        if(number != null){
+            return number;
+        }
+        try{
+            switch(bytes[0]){
+                case TYPE_USER:
+                    return readUser(bytes);
+                case TYPE_LOGIN_TICKET:
+                    return readLoginTicket(bytes);
+                default:
+                    return json.deserialize(bytes);
+            }
+        }catch(IOException e){
+            throw new SerializationException("反序列化失败：" + e.getMessage(), e);
+        }
+    }
+
+    // 只包含数字的值解析为Integer，超出范围时解析为Long，和JSON的规则一致
+    private static Object parseNumber(byte[] bytes){
+        int start = bytes[0] == '-' ? 1 : 0;
+        if(bytes.length == start || bytes.length - start > 19){
+            return null;
+        }
+        long value = 0;
+        for(int i = start; i < bytes.length; i++){
+            int digit = bytes[i] - '0';
+            if(digit < 0 || digit > 9){
+                return null;
+            }
+            value = value * 10 + digit;
+            if(value < 0){
+                // 超出long的范围
+                return null;
+            }
+        }
+        value = start == 1 ? -value : value;
+        if(value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE){
+            return (int) value;
+        }
+        return value;
+    }
+
+    private static byte[] writeUser(User user) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeByte(TYPE_USER);
+        out.writeByte(VERSION);
+        out.writeInt(user.getId());
+        writeString(out, user.getUsername());
+        writeString(out, user.getPassword());
+        writeString(out, user.getSalt());
+        writeString(out, user.getEmail());
+        out.writeInt(user.getType());
+        out.writeInt(user.getStatus());
+        writeString(out, user.getActivationCode());
+        writeString(out, user.getHeaderUrl());
+        writeDate(out, user.getCreateTime());
+        return buffer.toByteArray();
+    }
+
+    private static User readUser(byte[] bytes) throws IOException {
+        DataInputStream in = open(bytes);
+        User user = new User();
+        user.setId(in.readInt());
+        user.setUsername(readString(in));
+        user.setPassword(readString(in));
+        user.setSalt(readString(in));
+        user.setEmail(readString(in));
+        user.setType(in.readInt());
+        user.setStatus(in.readInt());
+        user.setActivationCode(readString(in));
+        user.setHeaderUrl(readString(in));
+        user.setCreateTime(readDate(in));
+        return user;
+    }
+
+    private static byte[] writeLoginTicket(LoginTicket loginTicket) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(buffer);
+        out.writeByte(TYPE_LOGIN_TICKET);
+        out.writeByte(VERSION);
+        out.writeInt(loginTicket.getId());
+        out.writeInt(loginTicket.getUserId());
+        writeString(out, loginTicket.getTicket());
+        out.writeInt(loginTicket.getStatus());
+        writeDate(out, loginTicket.getExpired());
+        return buffer.toByteArray();
+    }
+
+    private static LoginTicket readLoginTicket(byte[] bytes) throws IOException {
+        DataInputStream in = open(bytes);
+        LoginTicket loginTicket = new LoginTicket();
+        loginTicket.setId(in.readInt());
+        loginTicket.setUserId(in.readInt());
+        loginTicket.setTicket(readString(in));
+        loginTicket.setStatus(in.readInt());
+        loginTicket.setExpired(readDate(in));
+        return loginTicket;
+    }
+
+    // 跳过类型和版本
+    private static DataInputStream open(byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        in.readByte();
+        byte version = in.readByte();
+        if(version != VERSION){
+            throw new IOException("不支持的版本：" + version);
+        }
+        return in;
+    }
+
+    // 长度为-1表示null
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if(value == null){
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if(length < 0){
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeDate(DataOutputStream out, Date value) throws IOException {
+        out.writeLong(value == null ? NULL_DATE : value.getTime());
+    }
+
+    private static Date readDate(DataInputStream in) throws IOException {
+        long time = in.readLong();
+        return time == NULL_DATE ? null : new Date(time);
+    }
+
+}
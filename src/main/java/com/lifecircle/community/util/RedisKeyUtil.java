@@ -5,6 +5,8 @@ public class RedisKeyUtil {
     private static final String SPLIT = ":";
     private static final String PREFIX_ENTITY_LIKE = "like:entity";
     private static final String PREFIX_USER_LIKE = "like:user";
+    private static final String PREFIX_ENTITY_LIKE_COUNT = "like:count";
+    private static final String PREFIX_ENTITY_LIKE_BITMAP = "like:bitmap";
     private static final String PREFIX_FOLLOWEE = "followee";
     private static final String PREFIX_FOLLOWER = "follower";
     private static final String PREFIX_KAPTCHA = "kaptcha";
@@ -12,6 +14,15 @@ public class RedisKeyUtil {
     private static final String PREFIX_USER = "user";
     private static final String PREFIX_UV = "uv";
     private static final String PREFIX_DAU = "dau";
+    private static final String PREFIX_POST_COUNT = "post:count";
+    private static final String CHANNEL_USER_EVICT = "channel:user:evict";
+    private static final String CHANNEL_LETTER = "channel:letter";
+    private static final String PREFIX_SENSITIVE = "sensitive";
+    private static final String PREFIX_POST = "post";
+    private static final String PREFIX_FEED = "feed";
+    private static final String PREFIX_TIMELINE = "timeline";
+    private static final String PREFIX_LETTER_UNREAD = "letter:unread";
+    private static final String PREFIX_LETTER_ARCHIVE = "letter:archive";
 
     // 某个实体的赞
     // like:entity:entityType:entityId -> set(userId)
@@ -19,6 +30,18 @@ public class RedisKeyUtil {
         return PREFIX_ENTITY_LIKE + SPLIT + entityType + SPLIT + entityId;
     }
 
+    // 某个实体的赞(位图存储)
+    // like:bitmap:entityType:entityId -> bitmap(userId)
+    public static String getEntityLikeBitmapKey(int entityType, int entityId){
+        return PREFIX_ENTITY_LIKE_BITMAP + SPLIT + entityType + SPLIT + entityId;
+    }
+
+    // 某个实体的点赞数量
+    // like:count:entityType:entityId -> int
+    public static String getEntityLikeCountKey(int entityType, int entityId){
+        return PREFIX_ENTITY_LIKE_COUNT + SPLIT + entityType + SPLIT + entityId;
+    }
+
     // 某个用户的赞
     // like:user:userId -> int
     public static String getUserLikeKey(int userId){
@@ -37,6 +60,24 @@ public class RedisKeyUtil {
         return PREFIX_FOLLOWER + SPLIT + entityType + SPLIT + entityId;
     }
 
+    // 粉丝较多的实体，粉丝按userId分散到多个子集合中
+    // follower:entityType:entityId:shard -> zset(userId,now)
+    public static String getFollowerShardKey(int entityType, int entityId, int shard){
+        return PREFIX_FOLLOWER + SPLIT + entityType + SPLIT + entityId + SPLIT + shard;
+    }
+
+    // 粉丝已分散存储的实体
+    // follower:sharded -> set(entityType:entityId)
+    public static String getFollowerShardedKey(){
+        return PREFIX_FOLLOWER + SPLIT + "sharded";
+    }
+
+    // 分散存储的实体的粉丝数量，汇总各个子集合后缓存一段时间
+    // follower:count:entityType:entityId -> int
+    public static String getFollowerCountKey(int entityType, int entityId){
+        return PREFIX_FOLLOWER + SPLIT + "count" + SPLIT + entityType + SPLIT + entityId;
+    }
+
     // 登录验证码
     public static String getKaptchaKey(String owner){
         return PREFIX_KAPTCHA + SPLIT + owner;
@@ -52,6 +93,16 @@ public class RedisKeyUtil {
         return PREFIX_USER + SPLIT + userId;
     }
 
+    // 用户缓存失效的广播频道，消息内容为userId
+    public static String getUserEvictChannel(){
+        return CHANNEL_USER_EVICT;
+    }
+
+    // 私信事件的广播频道，每个节点把事件推送给连接在本节点的用户
+    public static String getLetterChannel(){
+        return CHANNEL_LETTER;
+    }
+
     // uv：独立访客，根据用户IP确认，不管是否登录， dau：日活跃用户
     // 单日uv
     public static String getUVKey(String date){
@@ -73,4 +124,75 @@ public class RedisKeyUtil {
         return PREFIX_DAU + SPLIT + startDate + SPLIT + endDate;
     }
 
+    // 帖子数量，userId为0时表示全站的帖子数量
+    // post:count:userId -> int
+    public static String getPostCountKey(int userId){
+        return PREFIX_POST_COUNT + SPLIT + userId;
+    }
+
+    // 需要重新计算分数的帖子
+    // post:score -> set(postId)
+    public static String getPostScoreKey(){
+        return PREFIX_POST + SPLIT + "score";
+    }
+
+    // 已有帖子的分数是否已经补算过
+    public static String getPostScoreBackfillKey(){
+        return PREFIX_POST + SPLIT + "score" + SPLIT + "backfilled";
+    }
+
+    // 首页帖子列表，orderMode为0时按最新排序，为1时按热度排序
+    // feed:orderMode -> zset(postId, score)
+    public static String getFeedKey(int orderMode){
+        return PREFIX_FEED + SPLIT + orderMode;
+    }
+
+    // 某个用户最近发布的帖子，关注的人较多时从这里拉取
+    // post:user:userId -> zset(postId, createTime)
+    public static String getUserPostsKey(int userId){
+        return PREFIX_POST + SPLIT + "user" + SPLIT + userId;
+    }
+
+    // 某个用户的关注动态，关注的人发帖时推送到这里
+    // timeline:userId -> zset(postId, createTime)
+    public static String getTimelineKey(int userId){
+        return PREFIX_TIMELINE + SPLIT + userId;
+    }
+
+    // 粉丝数量超过阈值的作者，他们的帖子不推送，由粉丝读取时拉取
+    // timeline:celebrity -> set(userId)
+    public static String getTimelineCelebrityKey(){
+        return PREFIX_TIMELINE + SPLIT + "celebrity";
+    }
+
+    // 某个用户的未读私信数量，total为所有会话的未读数量之和
+    // letter:unread:userId -> hash(conversationId -> int, total -> int)
+    public static String getLetterUnreadKey(int userId){
+        return PREFIX_LETTER_UNREAD + SPLIT + userId;
+    }
+
+    // 私信归档扫描的起点，ID不大于它的私信都已经归档或者不需要再检查
+    // letter:archive:watermark -> int
+    public static String getLetterArchiveWatermarkKey(){
+        return PREFIX_LETTER_ARCHIVE + SPLIT + "watermark";
+    }
+
+    // 敏感词，成员是普通字符串(不是JSON)，可以用redis-cli SADD直接写入
+    // sensitive:words -> set(word)
+    public static String getSensitiveWordsKey(){
+        return PREFIX_SENSITIVE + SPLIT + "words";
+    }
+
+    // 敏感词的版本号，修改敏感词之后需要INCR，各个节点据此重新加载
+    // sensitive:version -> int
+    public static String getSensitiveVersionKey(){
+        return PREFIX_SENSITIVE + SPLIT + "version";
+    }
+
+    // 某个版本的词典由哪个节点重新扫描，先写入的节点负责扫描
+    // sensitive:scan:version -> int
+    public static String getSensitiveScanKey(String version){
+        return PREFIX_SENSITIVE + SPLIT + "scan" + SPLIT + version;
+    }
+
 }
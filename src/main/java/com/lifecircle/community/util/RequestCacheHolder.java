@@ -0,0 +1,67 @@
+package com.lifecircle.community.util;
+
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * 请求级别的查询缓存，和HostHolder一样按线程隔离
+ * 一次请求中重复查询同一个用户、点赞数量等数据时，只有第一次会访问Redis或数据库
+ * 在LoginTicketInterceptor中开启和清理，请求之外(比如定时任务)调用时不做缓存
+ */
+@Component
+public class RequestCacheHolder {
+
+    private ThreadLocal<Map<String, Object>> caches = new ThreadLocal<>();
+
+    public void open(){
+        caches.set(new HashMap<>());
+    }
+
+    // 缓存中有则直接返回(包括null值)，没有则加载并缓存
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key, Supplier<T> loader){
+        Map<String, Object> cache = caches.get();
+        if(cache == null){
+            return loader.get();
+        }
+        if(cache.containsKey(key)){
+            return (T) cache.get(key);
+        }
+        T value = loader.get();
+        cache.put(key, value);
+        return value;
+    }
+
+    public boolean contains(String key){
+        Map<String, Object> cache = caches.get();
+        return cache != null && cache.containsKey(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T get(String key){
+        Map<String, Object> cache = caches.get();
+        return cache == null ? null : (T) cache.get(key);
+    }
+
+    public void put(String key, Object value){
+        Map<String, Object> cache = caches.get();
+        if(cache != null){
+            cache.put(key, value);
+        }
+    }
+
+    // 数据在本次请求中被修改时，清除对应的缓存
+    public void evict(String key){
+        Map<String, Object> cache = caches.get();
+        if(cache != null){
+            cache.remove(key);
+        }
+    }
+
+    public void clear(){
+        caches.remove();
+    }
+}
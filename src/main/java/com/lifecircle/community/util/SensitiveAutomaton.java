@@ -0,0 +1,471 @@
+package com.lifecircle.community.util;
+
+import org.apache.commons.lang3.CharUtils;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.*;
+
+/**
+ * 敏感词自动机
+ * 1.敏感词编译成双数组前缀树(base/check)，字符先映射成紧凑的编码，状态转移只需要数组下标计算
+ * 2.在前缀树上建立失败指针(Aho–Corasick)，匹配失败时沿失败指针转移，不需要回退文本指针
+ * 3.过滤时只遍历一遍文本，文本可以来自字符串，也可以来自Reader，结果可以是过滤后的文本，也可以只是敏感词的位置
+ *
+ * 过滤结果和原来的前缀树算法完全一致：
+ * 跳过符号，从左到右取最先开始的敏感词，同一位置开始的取最短的那个，替换后从敏感词之后继续匹配
+ */
+public final class SensitiveAutomaton {
+
+    // 空的自动机，不包含任何敏感词
+    public static final SensitiveAutomaton EMPTY = compile(Collections.emptyList());
+
+    // 字符的编码，0表示该字符不在任何敏感词中
+    private final char[] codes;
+
+    // 双数组：状态s经过编码为c的字符转移到base[s] + c，当且仅当check[base[s] + c] == s
+    private final int[] base;
+    private final int[] check;
+
+    // 失败指针：当前状态所代表的字符串的最长后缀，且该后缀也是前缀树中的状态
+    private final int[] fail;
+
+    // 状态的深度，即从根节点到该状态的字符数量
+    private final int[] depth;
+
+    // 是否为敏感词的结尾
+    private final boolean[] terminal;
+
+    // 沿失败指针找到的下一个敏感词结尾状态，0表示没有
+    private final int[] output;
+
+    // 前缀树的最大深度，决定过滤时需要暂存的字符数量
+    private final int maxLength;
+
+    // 敏感词数量
+    private final int wordCount;
+
+    private SensitiveAutomaton(char[] codes, int[] base, int[] check, int[] fail, int[] depth,
+                               boolean[] terminal, int[] output, int maxLength, int wordCount) {
+        this.codes = codes;
+        this.base = base;
+        this.check = check;
+        this.fail = fail;
+        this.depth = depth;
+        this.terminal = terminal;
+        this.output = output;
+        this.maxLength = maxLength;
+        this.wordCount = wordCount;
+    }
+
+    public int getWordCount() {
+        return wordCount;
+    }
+
+    // 判断是否为符号
+    public static boolean isSymbol(char c) {
+        // 0x2E80~0x9FFF是东亚文字范围
+        return !CharUtils.isAsciiAlphanumeric(c) && (c < 0x2E80 || c > 0x9FFF);
+    }
+
+    // 编译敏感词
+    public static SensitiveAutomaton compile(Iterable<String> keywords) {
+        // 1.先构造普通的前缀树，并给出现过的字符分配编码
+        char[] codes = new char[Character.MAX_VALUE + 1];
+        int alphabet = 0;
+        TrieNode root = new TrieNode();
+        int nodeCount = 1;
+        int maxLength = 0;
+        int wordCount = 0;
+
+        for (String keyword : keywords) {
+            if (keyword == null) {
+                continue;
+            }
+            TrieNode node = root;
+            int length = 0;
+            boolean reachable = true;
+            for (int i = 0; i < keyword.length(); i++) {
+                char c = keyword.charAt(i);
+                // 过滤时会跳过符号，包含符号的敏感词永远匹配不上，只保留符号之前的前缀，和原来的前缀树保持一致
+                if (isSymbol(c)) {
+                    reachable = false;
+                    break;
+                }
+                if (codes[c] == 0) {
+                    codes[c] = (char) ++alphabet;
+                }
+                int code = codes[c];
+                TrieNode child = node.children.get(code);
+                if (child == null) {
+                    child = new TrieNode();
+                    node.children.put(code, child);
+                    nodeCount++;
+                }
+                node = child;
+                length++;
+            }
+            maxLength = Math.max(maxLength, length);
+            if (reachable && length > 0 && !node.end) {
+                node.end = true;
+                wordCount++;
+            }
+        }
+
+        // 2.按广度优先的顺序把节点放进双数组
+        int capacity = Math.max(nodeCount * 2, alphabet + 2);
+        int[] base = new int[capacity];
+        int[] check = new int[capacity];
+        Arrays.fill(check, -1);
+        boolean[] used = new boolean[capacity];
+        used[0] = true;
+        int size = 1;
+        int nextFree = 1;
+
+        List<TrieNode> order = new ArrayList<>(nodeCount);
+        order.add(root);
+        for (int k = 0; k < order.size(); k++) {
+            TrieNode node = order.get(k);
+            if (node.children.isEmpty()) {
+                continue;
+            }
+            int first = node.children.firstKey();
+            int last = node.children.lastKey();
+
+            // 找到一个base，使所有子节点的位置都是空闲的
+            int b = Math.max(1, nextFree - first);
+            while (true) {
+                if (b + last >= used.length) {
+                    int newCapacity = Math.max(used.length * 2, b + last + 1);
+                    base = Arrays.copyOf(base, newCapacity);
+                    int oldLength = check.length;
+                    check = Arrays.copyOf(check, newCapacity);
+                    Arrays.fill(check, oldLength, newCapacity, -1);
+                    used = Arrays.copyOf(used, newCapacity);
+                }
+                boolean free = true;
+                for (int code : node.children.keySet()) {
+                    if (used[b + code]) {
+                        free = false;
+                        break;
+                    }
+                }
+                if (free) {
+                    break;
+                }
+                b++;
+            }
+
+            base[node.pos] = b;
+            for (Map.Entry<Integer, TrieNode> entry : node.children.entrySet()) {
+                int pos = b + entry.getKey();
+                used[pos] = true;
+                check[pos] = node.pos;
+                entry.getValue().pos = pos;
+                size = Math.max(size, pos + 1);
+                order.add(entry.getValue());
+            }
+            while (nextFree < used.length && used[nextFree]) {
+                nextFree++;
+            }
+        }
+
+        base = Arrays.copyOf(base, size);
+        check = Arrays.copyOf(check, size);
+
+        // 3.同样按广度优先的顺序建立失败指针，父节点的失败指针总是先于子节点确定
+        int[] fail = new int[size];
+        int[] depth = new int[size];
+        boolean[] terminal = new boolean[size];
+        int[] output = new int[size];
+
+        for (TrieNode node : order) {
+            terminal[node.pos] = node.end;
+            for (Map.Entry<Integer, TrieNode> entry : node.children.entrySet()) {
+                int code = entry.getKey();
+                int child = entry.getValue().pos;
+                depth[child] = depth[node.pos] + 1;
+
+                int f = 0;
+                if (node != root) {
+                    int state = fail[node.pos];
+                    while (true) {
+                        int t = base[state] + code;
+                        if (t < size && check[t] == state) {
+                            f = t;
+                            break;
+                        }
+                        if (state == 0) {
+                            break;
+                        }
+                        state = fail[state];
+                    }
+                }
+                fail[child] = f;
+            }
+        }
+        for (TrieNode node : order) {
+            int f = fail[node.pos];
+            output[node.pos] = node == root ? 0 : (terminal[f] ? f : output[f]);
+        }
+
+        return new SensitiveAutomaton(codes, base, check, fail, depth, terminal, output, maxLength, wordCount);
+    }
+
+    // 状态转移，当前状态没有对应的子节点时沿失败指针回退
+    private int transition(int state, char c) {
+        int code = codes[c];
+        if (code == 0) {
+            return 0;
+        }
+        while (true) {
+            int t = base[state] + code;
+            if (t < check.length && check[t] == state) {
+                return t;
+            }
+            if (state == 0) {
+                return 0;
+            }
+            state = fail[state];
+        }
+    }
+
+    /**
+     * 过滤敏感词，把结果写入out，原文按片段追加，不会整体复制
+     *
+     * 为了和原算法保持一致(同一位置开始的取最短的敏感词，且更早开始的优先)，
+     * 检测到的敏感词不会立刻替换，而是记在一个环形缓冲区里，
+     * 等到某个位置之前不可能再有敏感词开始时，才确定它是否被替换，
+     * 因此缓冲区只需要容纳最长敏感词长度的字符
+     */
+    public void filter(CharSequence text, String replacement, Appendable out) throws IOException {
+        Session session = new Session(replacement, out, null);
+        session.text = text;
+        for (int i = 0; i < text.length(); i++) {
+            session.accept(i, text.charAt(i));
+        }
+        session.finish(text.length());
+    }
+
+    public String filter(CharSequence text, String replacement) {
+        StringBuilder sb = new StringBuilder(text.length());
+        try {
+            filter(text, replacement, sb);
+        } catch (IOException e) {
+            // StringBuilder不会抛出IOException
+            throw new UncheckedIOException(e);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 从Reader中读取文本，边读边过滤，结果写入out
+     * 已经确定不会被替换的字符会及时写出，内存中只保留可能属于某个敏感词的那一段文本
+     */
+    public void filter(Reader in, String replacement, Appendable out) throws IOException {
+        Session session = new Session(replacement, out, null);
+        StringBuilder window = new StringBuilder();
+        session.text = window;
+        char[] buffer = new char[4096];
+        long offset = 0;
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            window.append(buffer, 0, n);
+            for (int k = 0; k < n; k++) {
+                session.accept(offset + k, buffer[k]);
+            }
+            offset += n;
+            session.flushResolved(offset);
+
+            // 丢弃已经写出的字符
+            int drop = (int) (session.written - session.textStart);
+            if (drop > 0) {
+                window.delete(0, drop);
+                session.textStart += drop;
+            }
+        }
+        session.finish(offset);
+    }
+
+    // 查找敏感词的位置，结果和filter替换的位置完全一致，但不生成过滤后的文本
+    public List<Match> scan(CharSequence text) {
+        List<Match> matches = new ArrayList<>();
+        Session session = new Session(null, null, matches);
+        session.text = text;
+        try {
+            for (int i = 0; i < text.length(); i++) {
+                session.accept(i, text.charAt(i));
+            }
+            session.finish(text.length());
+        } catch (IOException e) {
+            // 不写出文本时不会抛出IOException
+            throw new UncheckedIOException(e);
+        }
+        return matches;
+    }
+
+    // 一次过滤的状态，文本可以一次给出，也可以分多次给出
+    private final class Session {
+
+        private final String replacement;
+
+        // 过滤结果，为null时只记录位置
+        private final Appendable out;
+
+        // 敏感词的位置，为null时不记录
+        private final List<Match> matches;
+
+        private final int mask;
+
+        // 非符号字符在原文中的位置
+        private final long[] positions;
+
+        // 从该字符开始的最短敏感词的结尾，-1表示没有
+        private final long[] matchEnds;
+
+        // 当前可以访问的文本，以及它的第一个字符在原文中的位置
+        private CharSequence text;
+        private long textStart;
+
+        private int state;
+
+        // 已经读入的非符号字符数量
+        private long count;
+
+        // 尚未确定的第一个非符号字符，在它之前的字符都已经确定是否被替换
+        private long front;
+
+        // 原文中已经写入结果的位置
+        private long written;
+
+        private Session(String replacement, Appendable out, List<Match> matches) {
+            this.replacement = replacement;
+            this.out = out;
+            this.matches = matches;
+            int ringSize = Math.max(1, Integer.highestOneBit(maxLength) << 1);
+            this.mask = ringSize - 1;
+            this.positions = new long[ringSize];
+            this.matchEnds = new long[ringSize];
+        }
+
+        // 读入原文中位置为i的字符
+        private void accept(long i, char c) throws IOException {
+            // 跳过符号
+            if (isSymbol(c)) {
+                return;
+            }
+
+            int slot = (int) (count & mask);
+            positions[slot] = i;
+            matchEnds[slot] = -1;
+            state = transition(state, c);
+
+            // 记录以当前字符结尾的所有敏感词，每个开始位置只保留第一个(也就是最短的)
+            for (int s = terminal[state] ? state : output[state]; s != 0; s = output[s]) {
+                long start = count - depth[s] + 1;
+                if (start >= front && matchEnds[(int) (start & mask)] < 0) {
+                    matchEnds[(int) (start & mask)] = count;
+                }
+            }
+            count++;
+
+            // 当前状态代表了仍可能匹配上的最长后缀，在它之前开始的敏感词都已经检测完了
+            long alive = count - depth[state];
+            while (front < alive) {
+                long end = matchEnds[(int) (front & mask)];
+                if (end >= 0) {
+                    match(end);
+                } else {
+                    front++;
+                }
+            }
+        }
+
+        // 写出已经确定不会被替换的字符，end为已经读入的文本长度
+        private void flushResolved(long end) throws IOException {
+            if (out == null) {
+                return;
+            }
+            long to = front < count ? positions[(int) (front & mask)] : end;
+            if (to > written) {
+                out.append(text, (int) (written - textStart), (int) (to - textStart));
+                written = to;
+            }
+        }
+
+        // 文本结束，处理剩余的字符，length为原文的长度
+        private void finish(long length) throws IOException {
+            int s = state;
+            while (front < count) {
+                long end = matchEnds[(int) (front & mask)];
+                if (end >= 0) {
+                    match(end);
+                    continue;
+                }
+                // 原算法中，若从front开始一直匹配到文本末尾都没有失败，剩余的文本会原样保留
+                while (depth[s] > count - front) {
+                    s = fail[s];
+                }
+                if (s != 0 && depth[s] == count - front) {
+                    break;
+                }
+                front++;
+            }
+            if (out != null) {
+                out.append(text, (int) (written - textStart), (int) (length - textStart));
+            }
+        }
+
+        // 确定从front开始、到end结束的敏感词被替换
+        private void match(long end) throws IOException {
+            long start = positions[(int) (front & mask)];
+            long stop = positions[(int) (end & mask)] + 1;
+            if (matches != null) {
+                matches.add(new Match(start, stop));
+            }
+            if (out != null) {
+                out.append(text, (int) (written - textStart), (int) (start - textStart)).append(replacement);
+            }
+            written = stop;
+            front = end + 1;
+        }
+    }
+
+    // 敏感词在原文中的位置，包含start，不包含end，中间可能夹有符号
+    public static final class Match {
+
+        private final long start;
+
+        private final long end;
+
+        private Match(long start, long end) {
+            this.start = start;
+            this.end = end;
+        }
+
+        public long getStart() {
+            return start;
+        }
+
+        public long getEnd() {
+            return end;
+        }
+
+        @Override
+        public String toString() {
+            return "[" + start + ", " + end + ")";
+        }
+    }
+
+    // 编译时使用的前缀树节点，子节点按字符编码排序
+    private static class TrieNode {
+
+        private TreeMap<Integer, TrieNode> children = new TreeMap<>();
+
+        private boolean end;
+
+        private int pos;
+    }
+
+}
@@ -1,23 +1,39 @@
 package com.lifecircle.community.util;
 
 import jakarta.annotation.PostConstruct;
-import org.apache.commons.lang3.CharUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.ResourceLoader;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import java.io.BufferedReader;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.util.HashMap;
-import java.util.Map;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 
 /**
  * 敏感词过滤
- * 1.定义前缀树
- * 2.根据敏感词，初始化前缀树
- * 3.编写过滤敏感词算法
+ * 1.读取敏感词，来源可以是文件(默认为classpath下的sensitive-words.txt)，也可以是Redis中的集合
+ * 2.根据敏感词，编译敏感词自动机(SensitiveAutomaton)
+ * 3.用自动机一遍扫描完成过滤
+ *
+ * 敏感词更新后，定时任务会在后台重新编译自动机，再通过原子引用整体替换，
+ * 正在执行的过滤使用的始终是一个完整的旧版本或新版本，不需要加锁
  */
 @Component
 public class SensitiveFilter {
@@ -27,139 +43,142 @@ public class SensitiveFilter {
     // 替换符
     private static final String REPLACEMENT = "***";
 
-    // 根节点
-    private TrieNode rootNode = new TrieNode();
+    // 敏感词来源：file或redis
+    @Value("${community.sensitive.source:file}")
+    private String source;
 
-    // 1.定义前缀树
-    private class TrieNode {
+    // 敏感词文件的位置，支持classpath:和file:前缀
+    @Value("${community.sensitive.location:classpath:sensitive-words.txt}")
+    private String location;
 
-        // 关键词结束标识
-        private boolean isKeywordEnd = false;
+    @Autowired
+    private ResourceLoader resourceLoader;
 
-        // 子节点(key为下级字符，value为下级节点)
-        private Map<Character, TrieNode> subNodes = new HashMap<>();
+    // 敏感词和版本号由运维用redis-cli直接写入(SADD、INCR)，是普通字符串，不经过JSON序列化，
+    // 否则纯数字的敏感词会被解析成整数，不带引号的敏感词会解析失败
+    @Autowired
+    private StringRedisTemplate stringRedisTemplate;
 
-        public boolean isKeywordEnd() {
-            return isKeywordEnd;
-        }
+    // 当前使用的敏感词词典
+    private final AtomicReference<Dictionary> dictionary = new AtomicReference<>(new Dictionary(SensitiveAutomaton.EMPTY, "", ""));
 
-        public void setKeyWordEnd(boolean keyWordEnd) {
-            isKeywordEnd = keyWordEnd;
-        }
+    // 已加载的词典版本，由词典内容计算得出，内容相同的节点版本也相同
+    private static class Dictionary {
 
-        public void addSubNode(Character c, TrieNode trieNode) {
-            subNodes.put(c, trieNode);
-        }
+        private final SensitiveAutomaton automaton;
+
+        private final String version;
+
+        // 敏感词来源的修改标记(文件的修改时间或Redis中的版本号)，用来判断是否需要重新加载
+        private final String stamp;
 
-        public TrieNode getSubNode(Character c) {
-            return subNodes.get(c);
+        private Dictionary(SensitiveAutomaton automaton, String version, String stamp) {
+            this.automaton = automaton;
+            this.version = version;
+            this.stamp = stamp;
         }
     }
 
-    // 2.初始化前缀树
+    // 初始化敏感词自动机
     // 注解的作用是：当容器实例化这个bean之后，这个方法自动调用
     @PostConstruct
     public void init() {
-        try (
-                InputStream is = this.getClass().getClassLoader().getResourceAsStream("sensitive-words.txt");
-                // 从上面这个字节流读取文件不太方便，将其转换成字符流，再把字符流转成缓冲流，这样读取效率更高
-                BufferedReader reader = new BufferedReader(new InputStreamReader(is));
-        ) {
-            String keyWord;
-            // 一行一行读取，因为一个敏感词占一行
-            while ((keyWord = reader.readLine()) != null) {
-                // 将敏感词添加到前缀树
-                this.addKeyword(keyWord);
+        reload();
+    }
+
+    // 定时检查敏感词是否有更新，有则重新加载
+    @Scheduled(initialDelayString = "${community.sensitive.check-interval:30000}",
+            fixedDelayString = "${community.sensitive.check-interval:30000}")
+    public void reload() {
+        try {
+            String stamp = readStamp();
+            if (stamp != null && stamp.equals(dictionary.get().stamp)) {
+                return;
             }
+
+            List<String> keywords = readKeywords();
+            String digest = CommunityUtil.md5(String.join("\n", keywords));
+            String version = digest == null ? "empty" : digest.substring(0, 8);
+            if (version.equals(dictionary.get().version)) {
+                dictionary.set(new Dictionary(dictionary.get().automaton, version, stamp));
+                return;
+            }
+
+            // 在后台编译好新的自动机之后再整体替换
+            SensitiveAutomaton automaton = SensitiveAutomaton.compile(keywords);
+            dictionary.set(new Dictionary(automaton, version, stamp));
+            logger.info(String.format("敏感词已加载，版本[%s]，共[%d]个.", version, automaton.getWordCount()));
         } catch (Exception e) {
-            logger.error("加载敏感词文件失败：" + e.getMessage());
+            // 加载失败时继续使用旧版本的词典
+            logger.error("加载敏感词失败：" + e.getMessage());
         }
     }
 
-    // 将一个敏感词添加到前缀树中
-    private void addKeyword(String keyword) {
-        TrieNode tempNode = rootNode;
-        for (int i = 0; i < keyword.length(); i++) {
-            char c = keyword.charAt(i);
-            TrieNode subNode = tempNode.getSubNode(c);
+    // 当前节点已加载的词典版本
+    public String getVersion() {
+        return dictionary.get().version;
+    }
 
-            if (subNode == null) {
-                subNode = new TrieNode();
-                tempNode.addSubNode(c, subNode);
-            }
+    private String readStamp() throws Exception {
+        if ("redis".equals(source)) {
+            return stringRedisTemplate.opsForValue().get(RedisKeyUtil.getSensitiveVersionKey());
+        }
+        Resource resource = resourceLoader.getResource(location);
+        // classpath中打包在jar里的文件没有修改时间，只会在启动时加载一次
+        return resource.isFile() ? String.valueOf(resource.lastModified()) : "static";
+    }
 
-            // 指向子节点，进入下一轮循环
-            tempNode = subNode;
+    private List<String> readKeywords() throws Exception {
+        if ("redis".equals(source)) {
+            // 排序后计算版本，保证内容相同时各个节点的版本一致
+            Set<String> members = stringRedisTemplate.opsForSet().members(RedisKeyUtil.getSensitiveWordsKey());
+            Set<String> keywords = new TreeSet<>();
+            if (members != null) {
+                keywords.addAll(members);
+            }
+            return new ArrayList<>(keywords);
+        }
 
-            if (i == keyword.length() - 1) {
-                tempNode.setKeyWordEnd(true);
+        List<String> keywords = new ArrayList<>();
+        try (
+                InputStream is = resourceLoader.getResource(location).getInputStream();
+                // 从上面这个字节流读取文件不太方便，将其转换成字符流，再把字符流转成缓冲流，这样读取效率更高
+                BufferedReader reader = new BufferedReader(new InputStreamReader(is, StandardCharsets.UTF_8));
+        ) {
+            String keyWord;
+            // 一行一行读取，因为一个敏感词占一行
+            while ((keyWord = reader.readLine()) != null) {
+                keywords.add(keyWord);
             }
         }
+        return keywords;
     }
 
-    // 3.过滤敏感词算法
+    // 过滤敏感词
     public String filter(String text) {
         if (StringUtils.isBlank(text)) {
             return null;
         }
+        return dictionary.get().automaton.filter(text, REPLACEMENT);
+    }
 
-        // 指针1：遍历前缀数
-        TrieNode tempNode = rootNode;
-        // 指针2：遍历需要过滤的文本
-        int begin = 0;
-        // 指针3：遍历需要过滤的文本
-        int position = 0;
-        // 结果集
-        StringBuilder sb = new StringBuilder();
-
-        while (position < text.length()) {
-            char c = text.charAt(position);
-
-            // 跳过符号
-            if (isSymbol(c)) {
-                // 若指针1处于根节点，将此符号计入结果集，让指针2向前走一步
-                if (tempNode == rootNode) {
-                    sb.append(c);
-                    begin++;
-                }
-                // 指针3放外面向前，因为指针1不处于根节点时，指针2不能走
-                // 无论符号再开头或中间，指针3都向前走
-                position++;
-                continue;
-            }
-
-            // 检查下级节点
-            tempNode = tempNode.getSubNode(c);
-            if (tempNode == null) {
-                // 以begin开头的字符串不是敏感词
-                sb.append(text.charAt(begin));
-                // 进入下一个位置
-                position = ++begin;
-                // 指针1重新指向根节点
-                tempNode = rootNode;
-            } else if (tempNode.isKeywordEnd()) {
-                // 发现敏感词，将begin~position字符串替换掉
-                sb.append(REPLACEMENT);
-                // 进入下一个位置
-                begin = ++position;
-                // 指针1重新指向根节点
-                tempNode = rootNode;
-            } else {
-                // 检查下一个字符
-                position++;
-            }
-        }
-
-        // 将最后一批字符计入结果
-        sb.append(text.substring(begin));
+    // 过滤敏感词，结果直接写入out，适合较长的文本
+    public void filter(CharSequence text, Appendable out) throws IOException {
+        dictionary.get().automaton.filter(text, REPLACEMENT, out);
+    }
 
-        return sb.toString();
+    // 边读边过滤，不需要把整个文本读入内存
+    public void filter(Reader in, Appendable out) throws IOException {
+        dictionary.get().automaton.filter(in, REPLACEMENT, out);
     }
 
-    // 判断是否为符号
-    private boolean isSymbol(Character c) {
-        // 0x2E80~0x9FFF是东亚文字范围
-        return !CharUtils.isAsciiAlphanumeric(c) && (c < 0x2E80 || c > 0x9FFF);
+    // 批量查找敏感词的位置，多个文本在ForkJoinPool中并行扫描，结果和texts的顺序一一对应
+    // 整批文本使用同一个版本的词典
+    public List<List<SensitiveAutomaton.Match>> scan(List<? extends CharSequence> texts) {
+        SensitiveAutomaton automaton = dictionary.get().automaton;
+        return texts.parallelStream()
+                .map(text -> text == null ? Collections.<SensitiveAutomaton.Match>emptyList() : automaton.scan(text))
+                .collect(Collectors.toList());
     }
 
 }
@@ -0,0 +1,26 @@
+-- 会话摘要，每个用户的每个会话一行，发送和读取私信时在同一个事务中维护
+-- 私信列表按(user_id, last_message_id)索引分页，不再对message表做group by
+create table conversation (
+    user_id int not null,
+    conversation_id varchar(45) not null,
+    last_message_id int not null,
+    letter_count int not null default 0,
+    unread_count int not null default 0,
+    updated_at timestamp not null default current_timestamp,
+    primary key (user_id, conversation_id),
+    key index_user_last_message (user_id, last_message_id)
+) engine = InnoDB default charset = utf8mb4;
+
+-- 上线时用已有的私信初始化一次，系统通知(from_id = 1)不属于会话
+insert into conversation(user_id, conversation_id, last_message_id, letter_count, unread_count, updated_at)
+select t.user_id, t.conversation_id, max(t.id), count(*), sum(t.unread), now()
+from (
+    select from_id as user_id, conversation_id, id, 0 as unread
+    from message
+    where status != 2 and from_id != 1
+    union all
+    select to_id as user_id, conversation_id, id, if(status = 0, 1, 0) as unread
+    from message
+    where status != 2 and from_id != 1 and to_id != from_id
+) t
+group by t.user_id, t.conversation_id;
@@ -0,0 +1,7 @@
+-- 按热度排序(orderMode=1)的首页查询：order by type desc, score desc, create_time desc, id desc
+-- InnoDB的二级索引末尾自带主键，索引的顺序和排序完全一致，不需要filesort
+create index idx_discuss_post_hot on discuss_post (type, score, create_time);
+
+-- 按最新排序(orderMode=0)的首页查询和游标分页：order by type desc, create_time desc, id desc，
+-- 游标条件展开为type < ? or (type = ? and (create_time < ? or (create_time = ? and id < ?)))后是这个索引上的range扫描；status != 2不是等值条件，不放在索引前面
+create index idx_discuss_post_latest on discuss_post (type, create_time, id);
@@ -0,0 +1,8 @@
+-- 点赞数量的持久化副本，Redis中的计数丢失时从这里重建
+-- entity_type为3(用户)时，表示某个用户获得的赞的总数
+create table like_count (
+    entity_type int not null,
+    entity_id int not null,
+    like_count int not null default 0,
+    primary key (entity_type, entity_id)
+) engine = InnoDB default charset = utf8mb4;
@@ -0,0 +1,20 @@
+-- 私信归档表，message表只保留最近几个月的私信，更早的已读私信由定时任务分批移到这里
+-- 按月分区，整月的旧数据可以直接导出后删除分区，不影响message表的写入
+-- timestamp类型和时区有关，不能用to_days分区(MySQL错误1486)，所以create_time用datetime，从message表复制时按会话时区转换
+-- 之后的月份分区由归档任务(MessageArchiveService)在每次归档前从pmax中拆分出来，分区名为pyyyyMM
+create table message_archive (
+    id int not null,
+    from_id int not null,
+    to_id int not null,
+    conversation_id varchar(45) not null,
+    content text,
+    status int not null default 0,
+    create_time datetime not null,
+    primary key (id, create_time),
+    key index_conversation_id (conversation_id, id)
+) engine = InnoDB default charset = utf8mb4
+partition by range (to_days(create_time)) (
+    partition p202412 values less than (to_days('2025-01-01')),
+    partition p202501 values less than (to_days('2025-02-01')),
+    partition pmax values less than maxvalue
+);
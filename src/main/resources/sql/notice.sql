@@ -0,0 +1,6 @@
+-- 系统通知(from_id = 1)按主题保存在message表中，conversation_id为主题
+-- 通知列表和未读数量都按接收者、主题查询，分组统计只需要扫描索引
+create index idx_message_notice on message (to_id, from_id, conversation_id, status);
+
+-- 通知不归档，归档任务按这个索引分批删除保留期之前的已读通知
+create index idx_message_notice_time on message (from_id, create_time);
@@ -12,4 +12,46 @@ function like(btn, entityType, entityId, entityUserId) {
             }
         }
     );
-}
\ No newline at end of file
+}
+
+function loadReplies(btn, commentId, cursor) {
+    $.get(
+        CONTEXT_PATH + "/discuss/replies/" + commentId,
+        {"cursor":cursor},
+        function(data) {
+            data = $.parseJSON(data);
+            if(data.code != 0) {
+                alert(data.msg);
+                return;
+            }
+            var li = $(btn).parent();
+            $.each(data.replies, function(i, reply) {
+                var name = $("<b class='text-info'></b>").text(reply.username);
+                var head = $("<div></div>");
+                if(reply.targetName) {
+                    head.append($("<i class='text-info'></i>").text(reply.username), " 回复 ",
+                        $("<b class='text-info'></b>").text(reply.targetName));
+                } else {
+                    head.append(name);
+                }
+                head.append(":&nbsp;&nbsp;", $("<span></span>").html(reply.content));
+                var likeBtn = $("<a href='javascript:;' class='text-primary'></a>")
+                    .append($("<b></b>").text(reply.likeStatus==1?'已赞':'赞'), "(", $("<i></i>").text(reply.likeCount), ")")
+                    .click(function() {
+                        like(this, 2, reply.id, reply.userId);
+                    });
+                var foot = $("<div class='mt-3'></div>")
+                    .append($("<span></span>").text(new Date(reply.createTime).toLocaleString()))
+                    .append($("<ul class='d-inline float-right'></ul>").append($("<li class='d-inline ml-2'></li>").append(likeBtn)));
+                li.before($("<li class='pb-3 pt-3 mb-3 border-bottom'></li>").append(head, foot));
+            });
+            if(data.nextCursor == 0) {
+                li.remove();
+            } else {
+                $(btn).removeAttr("onclick").off("click").click(function() {
+                    loadReplies(btn, commentId, data.nextCursor);
+                });
+            }
+        }
+    );
+}
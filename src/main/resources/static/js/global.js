@@ -32,3 +32,18 @@ window.alert = function(message) {
 	$(".alert-box .modal-body p").text(message);
 	$(".alert-box").modal("show");
 }
+
+// 登录后通过Server-Sent Events接收未读消息数量，不需要刷新页面
+$(function() {
+	var badge = $("#allUnreadCount");
+	if(!badge.length || !window.EventSource) {
+		return;
+	}
+
+	var source = new EventSource(CONTEXT_PATH + "/letter/stream");
+	source.addEventListener("unread", function(e) {
+		var count = JSON.parse(e.data).unreadCount;
+		badge.text(count);
+		badge.toggleClass("d-none", count == 0);
+	});
+});
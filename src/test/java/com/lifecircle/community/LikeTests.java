@@ -0,0 +1,70 @@
+package com.lifecircle.community;
+
+import com.lifecircle.community.service.LikeService;
+import com.lifecircle.community.util.CommunityConstant;
+import com.lifecircle.community.util.RedisKeyUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.data.redis.core.RedisTemplate;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest
+@ContextConfiguration(classes = LifeCircleApplication.class)
+public class LikeTests implements CommunityConstant {
+
+    // 不存在的帖子和作者，计数的key一开始都不存在
+    private static final int POST_ID = 999999001;
+
+    private static final int AUTHOR_ID = 999999002;
+
+    private static final int USER_ID = 999999003;
+
+    @Autowired
+    private LikeService likeService;
+
+    @Autowired
+    private RedisTemplate redisTemplate;
+
+    private List<String> keys(){
+        return Arrays.asList(
+                RedisKeyUtil.getEntityLikeKey(ENTITY_TYPE_POST, POST_ID),
+                RedisKeyUtil.getEntityLikeCountKey(ENTITY_TYPE_POST, POST_ID),
+                RedisKeyUtil.getUserLikeKey(AUTHOR_ID));
+    }
+
+    @BeforeEach
+    @AfterEach
+    public void clear(){
+        redisTemplate.delete(keys());
+    }
+
+    @Test
+    public void testLikeWithoutCounts(){
+        // 数据库中可能有之前写入的计数副本，初始化后的值以它为准
+        long likeCount = likeService.findEntityLikeCount(ENTITY_TYPE_POST, POST_ID);
+        int userLikeCount = likeService.findUserLikeCount(AUTHOR_ID);
+        clear();
+
+        // 两个计数都不存在时，先初始化再点赞
+        Map<String, Object> map = likeService.like(USER_ID, ENTITY_TYPE_POST, POST_ID, AUTHOR_ID);
+        assertEquals(likeCount + 1, map.get("likeCount"));
+        assertEquals(1, map.get("likeStatus"));
+        assertEquals(userLikeCount + 1, likeService.findUserLikeCount(AUTHOR_ID));
+
+        // 只有作者的计数不存在(比如过期)
+        redisTemplate.delete(RedisKeyUtil.getUserLikeKey(AUTHOR_ID));
+        map = likeService.like(USER_ID, ENTITY_TYPE_POST, POST_ID, AUTHOR_ID);
+        assertEquals(likeCount, map.get("likeCount"));
+        assertEquals(0, map.get("likeStatus"));
+    }
+
+}
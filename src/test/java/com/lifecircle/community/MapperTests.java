@@ -56,7 +56,7 @@ public class MapperTests {
 
     @Test
     public void testSelectPosts(){
-        List<DiscussPost> list = discussPostMapper.selectDiscussPosts(0, 0, 10);
+        List<DiscussPost> list = discussPostMapper.selectDiscussPosts(0, 0, 10, 0);
         for(DiscussPost post : list){
             System.out.println(post);
         }
@@ -0,0 +1,63 @@
+package com.lifecircle.community;
+
+import com.lifecircle.community.util.SensitiveAutomaton;
+import com.lifecircle.community.util.SensitiveFilter;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ContextConfiguration;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest
+@ContextConfiguration(classes = LifeCircleApplication.class)
+public class SensitiveTests {
+
+    @Autowired
+    private SensitiveFilter sensitiveFilter;
+
+    @Test
+    public void testSensitiveFilter(){
+        String text = "这里可以赌博,可以嫖娼,可以吸毒,可以开票,哈哈哈!";
+        assertEquals("这里可以***,可以***,可以***,可以***,哈哈哈!", sensitiveFilter.filter(text));
+
+        // 敏感词中间的符号一起替换，敏感词前后的符号保留
+        text = "这里可以☆赌☆博☆,可以☆嫖☆娼☆,可以☆吸☆毒☆,可以☆开☆票☆,哈哈哈!";
+        assertEquals("这里可以☆***☆,可以☆***☆,可以☆***☆,可以☆***☆,哈哈哈!", sensitiveFilter.filter(text));
+    }
+
+    @Test
+    public void testAutomaton(){
+        // 更早开始的敏感词优先，同一位置开始的取最短的
+        SensitiveAutomaton automaton = SensitiveAutomaton.compile(Arrays.asList("abcd", "bc", "ab", "abc"));
+        assertEquals("***cd", automaton.filter("abcd", "***"));
+        assertEquals("x***", automaton.filter("xbc", "***"));
+
+        // 匹配失败后不需要回退，也能找到重叠位置上的敏感词
+        automaton = SensitiveAutomaton.compile(Arrays.asList("aab", "ab"));
+        assertEquals("a***", automaton.filter("aaab", "***"));
+    }
+
+    @Test
+    public void testStreamAndScan() throws IOException {
+        String text = "这里可以☆赌☆博☆,可以嫖娼,哈哈哈!";
+
+        // 从Reader边读边过滤，结果和一次过滤相同
+        StringBuilder sb = new StringBuilder();
+        sensitiveFilter.filter(new StringReader(text), sb);
+        assertEquals(sensitiveFilter.filter(text), sb.toString());
+
+        // 批量扫描只返回敏感词的位置
+        List<List<SensitiveAutomaton.Match>> matches = sensitiveFilter.scan(Arrays.asList(text, "哈哈哈"));
+        assertEquals(2, matches.get(0).size());
+        assertEquals(5, matches.get(0).get(0).getStart());
+        assertEquals(8, matches.get(0).get(0).getEnd());
+        assertEquals(0, matches.get(1).size());
+    }
+
+}